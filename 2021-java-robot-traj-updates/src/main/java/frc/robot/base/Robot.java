@@ -1,11 +1,24 @@
 package frc.robot.base;
 
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotState;
 import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import frc.robot.base.action.Action;
+import frc.robot.base.device.CanBus;
+import frc.robot.base.device.motor.PhoenixMotor;
+import frc.robot.base.device.motor.SimEncoderMotor;
 import frc.robot.base.input.Controller;
+import frc.robot.base.input.InputRecorder;
+import frc.robot.base.input.InputReplay;
 import frc.robot.base.subsystem.Subsystem;
+import frc.robot.base.util.Log;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,18 +39,70 @@ public abstract class Robot extends TimedRobot {
         this.autoActions = actions;
     }
 
+    /**
+     * set this to a recording from the robot to replay it in simulation, one recorded loop per teleop loop
+     */
+    public static final String REPLAY_ENV = "INPUT_REPLAY";
+    private static final String RECORDING_DIRECTORY = "/home/lvuser/logs";
+
+    // teleop input is recorded on the robot and can be replayed in simulation
+    private InputRecorder inputRecorder;
+    private InputReplay inputReplay;
+    private final NetworkTableEntry nte_recordedFrames = NTHandler.getRobotEntry("input/recordedFrames");
+    private final NetworkTableEntry nte_replayFrame = NTHandler.getRobotEntry("input/replayFrame");
+
     @Override
     public void robotInit() {
         NTHandler.init(this.subsystems);
+        String replayFile = System.getenv(REPLAY_ENV);
+        if (RobotBase.isSimulation() && replayFile != null) {
+            try {
+                inputReplay = new InputReplay(new File(replayFile));
+                Controller.setSource(inputReplay);
+                Log.info("Replaying input from {} ({} loops)", replayFile, inputReplay.getFrameCount());
+            } catch (IOException e) {
+                DriverStation.reportError("Unable to load input replay " + replayFile + ": " + e.getMessage(), false);
+            }
+        }
     }
 
     @Override
     public void robotPeriodic() {
+        boolean teleopEnabled = RobotState.isEnabled() && RobotState.isOperatorControl();
+        if (inputReplay != null && teleopEnabled) {
+            inputReplay.advance();
+        }
+        // every controller is read once here, before anything asks for its buttons
+        controllers.forEach(Controller::update);
+        if (inputRecorder != null && teleopEnabled) {
+            inputRecorder.record(Timer.getFPGATimestamp());
+        }
         //JAS added line
         subsystems.forEach(Subsystem::acquire);
         subsystems.forEach(Subsystem::periodic);
-        controllers.forEach(Controller::postPeriodic);
         NTHandler.update();
+        CanBus.endLoop(getPeriod(), PhoenixMotor.getTotalPeriodicFramesPerSecond());
+        Log.publish();
+        nte_recordedFrames.setDouble(inputRecorder == null ? 0 : inputRecorder.getFrames());
+        nte_replayFrame.setDouble(inputReplay == null ? -1 : inputReplay.getFrame());
+    }
+
+    private void startInputRecording() {
+        stopInputRecording();
+        if (!RobotBase.isReal()) return;
+        File file = new File(RECORDING_DIRECTORY, "input-" + System.currentTimeMillis() + ".bin");
+        try {
+            inputRecorder = new InputRecorder(file, controllers);
+        } catch (IOException e) {
+            DriverStation.reportWarning("Unable to record input to " + file + ": " + e.getMessage(), false);
+        }
+    }
+
+    private void stopInputRecording() {
+        if (inputRecorder != null) {
+            inputRecorder.close();
+            inputRecorder = null;
+        }
     }
 
     @Override
@@ -56,6 +121,11 @@ public abstract class Robot extends TimedRobot {
     @Override
     public void teleopInit() {
         subsystems.forEach(subsystem -> subsystem.onInit(RobotMode.TELEOP));
+        if (inputReplay != null) {
+            inputReplay.restart();
+        } else {
+            startInputRecording();
+        }
     }
 
     @Override
@@ -71,9 +141,15 @@ public abstract class Robot extends TimedRobot {
     public void testPeriodic() {
     }
 
+    @Override
+    public void simulationPeriodic() {
+        SimEncoderMotor.updateAll(getPeriod());
+    }
+
     @Override
     public void disabledInit() {
         subsystems.forEach(subsystem -> subsystem.onInit(RobotMode.DISABLED));
+        stopInputRecording();
     }
 
     public <S extends Subsystem> S register(S subsystem) {
@@ -0,0 +1,218 @@
+package frc.robot.base.device;
+
+import edu.wpi.first.networktables.NetworkTableEntry;
+import frc.robot.base.NTHandler;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts every call that goes to a CAN device and models what it costs on the bus
+ * Devices register once and then record each control frame, config call and sensor read they make
+ * Counts are kept for the whole run and for the last robot loop so patterns that flood the bus are easy to spot
+ */
+public class CanBus {
+
+    public enum FrameType {
+        /**
+         * a demand or other control frame
+         */
+        CONTROL(1, 0),
+        /**
+         * a demand (set), which only changes what goes in the control frame the controller library already sends on
+         * its own period, so it's an API call with no bus cost by itself
+         */
+        DEMAND(0, 0),
+        /**
+         * a config set or get, which is a request and a response the caller waits for
+         */
+        CONFIG(2, 2),
+        /**
+         * a sensor getter, which reads the last status frame received and doesn't touch the bus
+         */
+        SENSOR_READ(0, 0),
+        /**
+         * a sensor set (ex. resetting the encoder position)
+         */
+        SENSOR_SET(1, 0);
+
+        /**
+         * frames this call puts on the bus
+         */
+        public final int FRAMES;
+        /**
+         * modeled time the caller waits for the device to answer in milliseconds
+         */
+        public final double LATENCY_MS;
+
+        FrameType(int frames, double latencyMs) {
+            FRAMES = frames;
+            LATENCY_MS = latencyMs;
+        }
+    }
+
+    private static final int MAX_DEVICES = 64;
+    private static final int TYPES = FrameType.values().length;
+    private static final FrameType[] FRAME_TYPES = FrameType.values();
+    /**
+     * roughly how many bits an 8 byte frame takes on the bus, including stuffing
+     */
+    public static final double BITS_PER_FRAME = 130;
+    public static final double BUS_BITS_PER_SECOND = 1_000_000;
+
+    private static final String[] names = new String[MAX_DEVICES];
+    private static final int[] arbitrationIds = new int[MAX_DEVICES];
+    private static int deviceCount = 0;
+
+    // [device * TYPES + type]
+    private static final AtomicLongArray totalCounts = new AtomicLongArray(MAX_DEVICES * TYPES);
+    private static final AtomicIntegerArray loopCounts = new AtomicIntegerArray(MAX_DEVICES * TYPES);
+    private static final int[] lastLoopCounts = new int[MAX_DEVICES * TYPES];
+
+    private static double lastLoopFrames = 0;
+    private static double lastLoopUtilization = 0;
+    private static double lastLoopLatencyMs = 0;
+    private static double utilizationBudget = 0.5;
+    private static int budgetViolations = 0;
+
+    private static NetworkTableEntry nte_loopFrames;
+    private static NetworkTableEntry nte_loopUtilization;
+    private static NetworkTableEntry nte_loopLatencyMs;
+    private static NetworkTableEntry nte_budgetViolations;
+
+    /**
+     * Adds a device to be tracked
+     * @param name a readable name, ex. "TalonSRX16"
+     * @param arbitrationId the device's base arbitration id
+     * @return the index to record calls with, or -1 if there are too many devices to track
+     */
+    public static synchronized int register(String name, int arbitrationId) {
+        if (deviceCount >= MAX_DEVICES) {
+            return -1;
+        }
+        names[deviceCount] = name;
+        arbitrationIds[deviceCount] = arbitrationId;
+        return deviceCount++;
+    }
+
+    /**
+     * Counts a call to a device; safe to call from any thread and never allocates
+     * @param device the index from register
+     * @param type what kind of call it was
+     */
+    public static void record(int device, FrameType type) {
+        record(device, type, 1);
+    }
+
+    /**
+     * Counts several calls of the same kind at once, ex. a sample that reads three sensor values
+     * @param count how many calls there were
+     */
+    public static void record(int device, FrameType type, int count) {
+        if (device < 0) return;
+        int i = device * TYPES + type.ordinal();
+        totalCounts.addAndGet(i, count);
+        loopCounts.addAndGet(i, count);
+    }
+
+    /**
+     * Closes out the counts for this loop and models the bus load; call once at the end of each robot loop
+     * @param dt the loop period in seconds
+     * @param periodicFramesPerSecond the frames sent on a timer whether or not anything called the device
+     *                                (status frames and the periodic control frames)
+     */
+    public static void endLoop(double dt, double periodicFramesPerSecond) {
+        double frames = periodicFramesPerSecond * dt;
+        double latency = 0;
+        int devices = deviceCount;
+        for (int device = 0; device < devices; device++) {
+            for (int type = 0; type < TYPES; type++) {
+                int i = device * TYPES + type;
+                int count = loopCounts.getAndSet(i, 0);
+                lastLoopCounts[i] = count;
+                frames += count * FRAME_TYPES[type].FRAMES;
+                latency += count * FRAME_TYPES[type].LATENCY_MS;
+            }
+        }
+        lastLoopFrames = frames;
+        lastLoopLatencyMs = latency + frames * BITS_PER_FRAME / BUS_BITS_PER_SECOND * 1000;
+        lastLoopUtilization = dt > 0 ? frames * BITS_PER_FRAME / (BUS_BITS_PER_SECOND * dt) : 0;
+        if (lastLoopUtilization > utilizationBudget) {
+            budgetViolations++;
+        }
+
+        if (nte_loopFrames == null) {
+            nte_loopFrames = NTHandler.getRobotEntry("can/loop/frames");
+            nte_loopUtilization = NTHandler.getRobotEntry("can/loop/utilizationPercent");
+            nte_loopLatencyMs = NTHandler.getRobotEntry("can/loop/latencyMs");
+            nte_budgetViolations = NTHandler.getRobotEntry("can/loop/budgetViolations");
+        }
+        nte_loopFrames.setDouble(lastLoopFrames);
+        nte_loopUtilization.setDouble(lastLoopUtilization * 100);
+        nte_loopLatencyMs.setDouble(lastLoopLatencyMs);
+        nte_budgetViolations.setDouble(budgetViolations);
+    }
+
+    /**
+     * Sets the most of the bus a loop is allowed to use before it counts as a violation
+     * @param utilization the budget as a fraction of the bus (0 to 1)
+     */
+    public static void setUtilizationBudget(double utilization) {
+        utilizationBudget = utilization;
+    }
+
+    public static boolean isOverBudget() {
+        return lastLoopUtilization > utilizationBudget;
+    }
+
+    public static int getBudgetViolations() {
+        return budgetViolations;
+    }
+
+    /**
+     * @return the modeled fraction of the bus used during the last loop (0 to 1)
+     */
+    public static double getLastLoopUtilization() {
+        return lastLoopUtilization;
+    }
+
+    /**
+     * @return the frames put on the bus during the last loop, including periodic frames
+     */
+    public static double getLastLoopFrames() {
+        return lastLoopFrames;
+    }
+
+    /**
+     * @return the modeled time spent waiting on the bus during the last loop in milliseconds
+     */
+    public static double getLastLoopLatencyMs() {
+        return lastLoopLatencyMs;
+    }
+
+    /**
+     * @return how many calls of a type a device made during the last loop
+     */
+    public static int getLastLoopCount(int device, FrameType type) {
+        return lastLoopCounts[device * TYPES + type.ordinal()];
+    }
+
+    /**
+     * @return how many calls of a type a device has made since startup
+     */
+    public static long getTotalCount(int device, FrameType type) {
+        return totalCounts.get(device * TYPES + type.ordinal());
+    }
+
+    public static int getDeviceCount() {
+        return deviceCount;
+    }
+
+    public static String getName(int device) {
+        return names[device];
+    }
+
+    public static int getArbitrationId(int device) {
+        return arbitrationIds[device];
+    }
+}
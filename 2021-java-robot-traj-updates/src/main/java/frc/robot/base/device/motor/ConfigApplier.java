@@ -0,0 +1,121 @@
+package frc.robot.base.device.motor;
+
+import com.ctre.phoenix.ErrorCode;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends motor controller configuration from a background thread so the main loop never waits on config timeouts
+ * Each config call is retried a few times before the whole config is reported as failed
+ */
+public class ConfigApplier {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "motor-config");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicInteger pending = new AtomicInteger();
+    private static final AtomicInteger applied = new AtomicInteger();
+    private static final AtomicInteger failed = new AtomicInteger();
+    private static final AtomicInteger retries = new AtomicInteger();
+    private static volatile double lastApplyMs = 0;
+
+    /**
+     * A group of config calls that should be sent together
+     */
+    @FunctionalInterface
+    public interface ConfigTask {
+        /**
+         * @param step runs a single config call with retries and returns whether it eventually succeeded
+         */
+        boolean apply(ConfigStep step);
+    }
+
+    @FunctionalInterface
+    public interface ConfigStep {
+        boolean run(Supplier<ErrorCode> call);
+    }
+
+    /**
+     * Queues config calls to be sent on the config thread
+     * @param description what is being configured, used in error messages
+     * @param task the config calls
+     * @return a future that completes with whether every call succeeded
+     */
+    public static CompletableFuture<Boolean> submit(String description, ConfigTask task) {
+        pending.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            boolean ok;
+            RuntimeException error = null;
+            try {
+                ok = task.apply(ConfigApplier::runWithRetries);
+            } catch (RuntimeException e) {
+                ok = false;
+                error = e;
+            }
+            lastApplyMs = (System.nanoTime() - start) * 1e-6d;
+            if (ok) {
+                applied.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+                if (error != null) {
+                    DriverStation.reportError("Failed to configure " + description + ": " + error, error.getStackTrace());
+                } else {
+                    DriverStation.reportError("Failed to configure " + description, false);
+                }
+            }
+            pending.decrementAndGet();
+            return ok;
+        }, worker);
+    }
+
+    private static boolean runWithRetries(Supplier<ErrorCode> call) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                retries.incrementAndGet();
+            }
+            ErrorCode error = call.get();
+            if (error == null || error == ErrorCode.OK) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return how many configs are queued or being sent
+     */
+    public static int getPending() {
+        return pending.get();
+    }
+
+    public static int getApplied() {
+        return applied.get();
+    }
+
+    public static int getFailed() {
+        return failed.get();
+    }
+
+    public static int getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return how long the last config took to send in milliseconds
+     */
+    public static double getLastApplyMs() {
+        return lastApplyMs;
+    }
+}
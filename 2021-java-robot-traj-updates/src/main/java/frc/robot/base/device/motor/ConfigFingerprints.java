@@ -0,0 +1,128 @@
+package frc.robot.base.device.motor;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Remembers what was last written to each motor controller so unchanged settings don't have to be sent again on boot
+ * The base fingerprint (which includes the device ID) is also stored on the controller itself (custom parameter 0) so a
+ * swapped, renumbered or factory reset controller never matches and always gets fully reconfigured
+ * A fingerprint of every slot's gains is stored in custom parameter 1, so a controller moved over from another role
+ * or with gains changed by hand gets its gains sent again even though the base settings match
+ */
+public class ConfigFingerprints {
+
+    /**
+     * bump this whenever what the fingerprints cover changes so old caches stop matching
+     */
+    private static final int VERSION = 2;
+    public static final int CUSTOM_PARAM_INDEX = 0;
+    public static final int GAINS_PARAM_INDEX = 1;
+
+    private static final String FILE_NAME = "motor-config-fingerprints.properties";
+    private static Properties cache = null;
+
+    /**
+     * @return a fingerprint of the given values that is never 0 (the factory default of a custom parameter)
+     */
+    public static int of(double... values) {
+        int hash = 31 * VERSION + Arrays.hashCode(values);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * @return the fingerprint of the gains and feedback settings in a config
+     */
+    public static int of(EncoderMotorConfig config) {
+        return of(
+            config.PROFILE_SLOT, config.PID_LOOP_INDEX,
+            config.F, config.P, config.I, config.D, config.INTEGRAL_ZONE
+        );
+    }
+
+    /**
+     * @param key the setting, ex. "TalonSRX16.slot0"
+     * @param fingerprint the fingerprint of what is about to be written
+     * @return whether that exact setting was already written last time
+     */
+    public static synchronized boolean matches(String key, int fingerprint) {
+        String stored = load().getProperty(key);
+        return stored != null && stored.equals(Integer.toString(fingerprint));
+    }
+
+    /**
+     * @return the fingerprint last written for a setting, or 0 if there isn't one
+     */
+    public static synchronized int get(String key) {
+        String stored = load().getProperty(key);
+        if (stored == null) return 0;
+        try {
+            return Integer.parseInt(stored);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Records that a setting has been written and saves the cache
+     */
+    public static synchronized void store(String key, int fingerprint) {
+        load().setProperty(key, Integer.toString(fingerprint));
+        save();
+    }
+
+    /**
+     * Forgets a single setting so it gets written again
+     */
+    public static synchronized void remove(String key) {
+        if (load().remove(key) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Forgets everything about a device, ex. after it was factory reset
+     * @param device the device prefix, ex. "TalonSRX16"
+     */
+    public static synchronized void clear(String device) {
+        load().keySet().removeIf(key -> ((String) key).startsWith(device + "."));
+        save();
+    }
+
+    private static Properties load() {
+        if (cache == null) {
+            cache = new Properties();
+            File file = getFile();
+            if (file.exists()) {
+                try (InputStream in = new FileInputStream(file)) {
+                    cache.load(in);
+                } catch (IOException e) {
+                    DriverStation.reportWarning("Unable to read " + FILE_NAME + ", reconfiguring every motor", false);
+                    cache.clear();
+                }
+            }
+        }
+        return cache;
+    }
+
+    private static void save() {
+        try (OutputStream out = new FileOutputStream(getFile())) {
+            cache.store(out, "motor controller config fingerprints");
+        } catch (IOException e) {
+            DriverStation.reportWarning("Unable to write " + FILE_NAME, false);
+        }
+    }
+
+    private static File getFile() {
+        return new File(Filesystem.getOperatingDirectory(), FILE_NAME);
+    }
+}
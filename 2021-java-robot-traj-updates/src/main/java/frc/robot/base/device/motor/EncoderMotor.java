@@ -1,5 +1,9 @@
 package frc.robot.base.device.motor;
 
+import edu.wpi.first.wpilibj.Timer;
+
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A generic motor that has an encoder
  */
@@ -7,6 +11,17 @@ public interface EncoderMotor extends Motor {
     double getVelocity();
     double getVelocityRaw();
     double setVelocity(double speed);
+
+    /**
+     * Sets the velocity with extra output added on top of the closed loop, ex. to account for acceleration
+     * By default the feedforward is ignored
+     * @param speed the velocity
+     * @param feedforward the extra output (-1 to 1)
+     * @return the raw velocity sent
+     */
+    default double setVelocity(double speed, double feedforward) {
+        return setVelocity(speed);
+    }
     double getDistance();
     void resetDistance();
     @Override
@@ -15,4 +30,51 @@ public interface EncoderMotor extends Motor {
     EncoderMotor invert();
 
     void setConfig(EncoderMotorConfig config);
+
+    /**
+     * Reads distance, velocity and output together with when they were measured
+     * By default the values are treated as measured right now
+     * @param sample the sample to fill in
+     * @return the same sample for convenience
+     */
+    default MotorSample sample(MotorSample sample) {
+        sample.distance = getDistance();
+        sample.velocityRaw = getVelocityRaw();
+        sample.velocity = getVelocity();
+        sample.outputPercent = getOutputPercent();
+        sample.timestamp = Timer.getFPGATimestamp();
+        sample.age = 0;
+        sample.missed = false;
+        return sample;
+    }
+
+    /**
+     * Loads configs ahead of time so they can be switched to instantly with selectConfig
+     * By default this does nothing and selectConfig falls back to setConfig
+     */
+    default void preloadConfigs(EncoderMotorConfig... configs) {}
+
+    /**
+     * Loads a config into its slot without switching to it
+     * By default it's preloaded and counted as done right away
+     * @return a future that completes with whether the motor controller acknowledged every call
+     */
+    default CompletableFuture<Boolean> loadConfig(EncoderMotorConfig config) {
+        preloadConfigs(config);
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * Switches to a config that was already loaded with preloadConfigs or loadConfig
+     */
+    default void selectConfig(EncoderMotorConfig config) {
+        setConfig(config);
+    }
+
+    /**
+     * @return whether a config has been sent but not applied yet
+     */
+    default boolean isConfigPending() {
+        return false;
+    }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ public class EncoderMotorConfig {
      */
     public EncoderMotorConfig(double wheelRadius, int countsPerRevolution, double f, double p, double i, double d, int integralZone) {
         PID_LOOP_INDEX = 0;
+        PROFILE_SLOT = 0;
         TIMEOUT_MS = 30;
 
         F = f;
@@ -40,6 +41,7 @@ public class EncoderMotorConfig {
      */
     public EncoderMotorConfig(int countsPerRevolution, double f, double p, double i, double d, int integralZone) {
         PID_LOOP_INDEX = 0;
+        PROFILE_SLOT = 0;
         TIMEOUT_MS = 30;
 
         F = f;
@@ -54,13 +56,51 @@ public class EncoderMotorConfig {
         OUTPUT_MULTIPLIER = 1d / INPUT_MULTIPLIER;
     }
 
+    private EncoderMotorConfig(
+            EncoderMotorConfig other, int profileSlot, double f, double p, double i, double d, int integralZone) {
+        PID_LOOP_INDEX = other.PID_LOOP_INDEX;
+        PROFILE_SLOT = profileSlot;
+        TIMEOUT_MS = other.TIMEOUT_MS;
+
+        F = f;
+        P = p;
+        I = i;
+        D = d;
+        INTEGRAL_ZONE = integralZone;
+
+        DISTANCE_MULTIPLIER = other.DISTANCE_MULTIPLIER;
+        INPUT_MULTIPLIER = other.INPUT_MULTIPLIER;
+        OUTPUT_MULTIPLIER = other.OUTPUT_MULTIPLIER;
+    }
+
+    /**
+     * Copies this config into a different gain slot so several configs can be loaded onto a motor at once
+     * @param profileSlot the gain slot on the motor controller (0 to 3)
+     * @return a copy of this config that uses the given slot
+     */
+    public EncoderMotorConfig withSlot(int profileSlot) {
+        return new EncoderMotorConfig(this, profileSlot, F, P, I, D, INTEGRAL_ZONE);
+    }
+
+    /**
+     * Copies this config with different gains; configs can't be changed once made so each motor can safely keep its own
+     * @return a copy of this config that uses the given gains
+     */
+    public EncoderMotorConfig withGains(double f, double p, double i, double d) {
+        return new EncoderMotorConfig(this, PROFILE_SLOT, f, p, i, d, INTEGRAL_ZONE);
+    }
+
     public final int PID_LOOP_INDEX;
+    /**
+     * the gain slot the F, P, I, D and integral zone are stored in
+     */
+    public final int PROFILE_SLOT;
     public final int TIMEOUT_MS;
-    public double F;
-    public double P;
-    public double I;
-    public double D;
-    public int INTEGRAL_ZONE;
+    public final double F;
+    public final double P;
+    public final double I;
+    public final double D;
+    public final int INTEGRAL_ZONE;
 
     public final double DISTANCE_MULTIPLIER;
     public final double INPUT_MULTIPLIER;
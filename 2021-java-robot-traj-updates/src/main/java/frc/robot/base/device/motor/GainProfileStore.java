@@ -0,0 +1,173 @@
+package frc.robot.base.device.motor;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps the gains of one motor so they can be tuned live
+ * Every update makes a new config rather than changing the shared one and gets a new version number
+ * The motor controller's gains are written one call at a time, so new gains go into a slot that isn't in use and the
+ * motor only switches to that slot once every call has been acknowledged; the two slots take turns
+ * The slot that was switched away from still has the profile before, so a rollback is just switching back
+ */
+public class GainProfileStore {
+
+    private final String name;
+    private final EncoderMotor motor;
+    private final double maxGain;
+    private final int firstSlot;
+    private final int secondSlot;
+
+    private EncoderMotorConfig current;
+    private EncoderMotorConfig previous;
+    // the config being written into the spare slot and the result of writing it
+    private EncoderMotorConfig loading = null;
+    private CompletableFuture<Boolean> loadingResult = null;
+    // whether the spare slot (where previous is) has been written over since switching away from it
+    private boolean previousOverwritten = false;
+    private int version = 0;
+    private int rejected = 0;
+    private int failed = 0;
+
+    /**
+     * @param name the motor's name, used in warnings
+     * @param motor the motor the gains are for
+     * @param initial the config the motor was created with
+     * @param spareSlot a gain slot nothing else uses, to take turns with the initial config's slot
+     * @param maxGain the largest any gain is allowed to be
+     */
+    public GainProfileStore(String name, EncoderMotor motor, EncoderMotorConfig initial, int spareSlot, double maxGain) {
+        if (spareSlot == initial.PROFILE_SLOT) {
+            throw new IllegalArgumentException("The spare slot has to be different from the initial config's slot");
+        }
+        this.name = name;
+        this.motor = motor;
+        this.maxGain = maxGain;
+        this.firstSlot = initial.PROFILE_SLOT;
+        this.secondSlot = spareSlot;
+        this.current = initial;
+        this.previous = initial;
+    }
+
+    /**
+     * Checks new gains and starts sending them if they're valid; this doesn't wait for the motor controller
+     * @return whether the gains were accepted
+     */
+    public boolean update(double f, double p, double i, double d) {
+        EncoderMotorConfig latest = loading != null ? loading : current;
+        if (f == latest.F && p == latest.P && i == latest.I && d == latest.D) {
+            return true;
+        }
+        String problem = validate(f, p, i, d);
+        if (problem != null) {
+            rejected++;
+            DriverStation.reportWarning("Rejected " + name + " gains (" + problem + "), keeping version " + version, false);
+            return false;
+        }
+        load(current.withGains(f, p, i, d).withSlot(getSpareSlot()));
+        return true;
+    }
+
+    /**
+     * Goes back to the profile before the last update, throwing away an update that's still being sent
+     */
+    public void rollback() {
+        loading = null;
+        loadingResult = null;
+        if (previous == current) return;
+        if (previousOverwritten) {
+            // an update started writing over it, so it has to be sent again
+            load(previous);
+        } else {
+            switchTo(previous);
+        }
+    }
+
+    /**
+     * Switches to gains that finished sending; call once per loop
+     */
+    public void periodic() {
+        if (loadingResult == null || !loadingResult.isDone()) return;
+        EncoderMotorConfig loaded = loading;
+        boolean ok = !loadingResult.isCompletedExceptionally() && loadingResult.join();
+        loading = null;
+        loadingResult = null;
+        if (ok) {
+            switchTo(loaded);
+        } else {
+            failed++;
+            DriverStation.reportWarning("Unable to send " + name + " gains, keeping version " + version, false);
+        }
+    }
+
+    private void load(EncoderMotorConfig config) {
+        loading = config;
+        previousOverwritten = true;
+        loadingResult = motor.loadConfig(config);
+    }
+
+    private void switchTo(EncoderMotorConfig config) {
+        previous = current;
+        current = config;
+        previousOverwritten = false;
+        version++;
+        motor.selectConfig(config);
+    }
+
+    private int getSpareSlot() {
+        return current.PROFILE_SLOT == firstSlot ? secondSlot : firstSlot;
+    }
+
+    private String validate(double f, double p, double i, double d) {
+        double[] gains = {f, p, i, d};
+        for (double gain : gains) {
+            if (!Double.isFinite(gain)) {
+                return "not a number";
+            }
+            if (gain < 0 || gain > maxGain) {
+                return "out of range 0 to " + maxGain;
+            }
+        }
+        if (f == 0 && p == 0) {
+            return "no F or P to drive the motor";
+        }
+        return null;
+    }
+
+    /**
+     * @return the config the motor is running
+     */
+    public EncoderMotorConfig getCurrent() {
+        return current;
+    }
+
+    public EncoderMotorConfig getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return how many times the motor has switched gains, including rollbacks
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return how many updates the motor controller didn't acknowledge
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return whether new gains are still being sent to the motor controller
+     */
+    public boolean isApplying() {
+        return loading != null;
+    }
+}
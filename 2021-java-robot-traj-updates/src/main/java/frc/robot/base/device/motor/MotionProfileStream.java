@@ -0,0 +1,141 @@
+package frc.robot.base.device.motor;
+
+import com.ctre.phoenix.motion.MotionProfileStatus;
+import com.ctre.phoenix.motion.SetValueMotionProfile;
+import com.ctre.phoenix.motion.TrajectoryPoint;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
+import frc.robot.base.device.CanBus;
+import frc.robot.base.device.CanBus.FrameType;
+
+/**
+ * Feeds motion profile points into a phoenix motor's buffer so the controller runs the profile at its own 1ms rate
+ * Points are pushed and processed from a streaming thread; the output is switched from the main loop since that's
+ * where every other demand for the motor comes from
+ */
+public class MotionProfileStream {
+
+    private final PhoenixMotor motor;
+    private final BaseMotorController controller;
+    // reused for every point and status read so streaming doesn't allocate
+    private final TrajectoryPoint point = new TrajectoryPoint();
+    private final MotionProfileStatus status = new MotionProfileStatus();
+
+    private int slot = 0;
+    private int pointDurationMs = 10;
+    private double startPosition = 0;
+    private volatile int bufferedPoints = 0;
+    private volatile boolean finished = false;
+    private volatile boolean underrun = false;
+    private volatile SetValueMotionProfile output = SetValueMotionProfile.Disable;
+
+    public MotionProfileStream(PhoenixMotor motor) {
+        this.motor = motor;
+        this.controller = motor.getController();
+    }
+
+    /**
+     * Clears anything left from the last profile and gets the controller ready for a new one
+     * @param slot the gain slot the points run with
+     * @param pointDurationMs how long each point lasts
+     */
+    public void begin(int slot, int pointDurationMs) {
+        this.slot = slot;
+        this.pointDurationMs = pointDurationMs;
+        this.finished = false;
+        this.underrun = false;
+        this.bufferedPoints = 0;
+        this.output = SetValueMotionProfile.Disable;
+        // points are relative to where the motor is now so the distance readings never jump
+        this.startPosition = controller.getSelectedSensorPosition();
+        controller.clearMotionProfileTrajectories();
+        controller.clearMotionProfileHasUnderrun(0);
+        // the duration comes from each point, and the buffer is moved down at twice the point rate
+        controller.configMotionProfileTrajectoryPeriod(0, 0);
+        controller.changeMotionControlFramePeriod(Math.max(1, pointDurationMs / 2));
+        CanBus.record(motor.getCanIndex(), FrameType.CONFIG, 3);
+    }
+
+    /**
+     * @return whether the top level buffer has room for another point
+     */
+    public boolean canPush() {
+        return !controller.isMotionProfileTopLevelBufferFull();
+    }
+
+    /**
+     * Adds a point to the end of the profile
+     * @param distance the distance from where the profile started in the config's distance units
+     * @param velocity the velocity in the config's velocity units
+     * @param arbFeedForward extra output added on top of the gains (-1 to 1)
+     * @param last whether this is the final point
+     */
+    public void push(double distance, double velocity, double arbFeedForward, boolean last) {
+        point.position = startPosition + distance / motor.getDistanceMultiplier();
+        point.velocity = velocity * motor.getOutputMultiplier();
+        point.arbFeedFwd = arbFeedForward;
+        point.profileSlotSelect0 = slot;
+        point.profileSlotSelect1 = 0;
+        point.timeDur = pointDurationMs;
+        point.zeroPos = false;
+        point.useAuxPID = false;
+        point.isLastPoint = last;
+        controller.pushMotionProfileTrajectory(point);
+        // counted right away so whoever is pushing can tell how far ahead it is before the next process
+        bufferedPoints++;
+    }
+
+    /**
+     * Moves points down to the controller and reads its progress; call at least twice per point duration
+     */
+    public void process() {
+        controller.processMotionProfileBuffer();
+        controller.getMotionProfileStatus(status);
+        CanBus.record(motor.getCanIndex(), FrameType.CONTROL);
+        CanBus.record(motor.getCanIndex(), FrameType.SENSOR_READ);
+        bufferedPoints = status.topBufferCnt + status.btmBufferCnt;
+        underrun = underrun || status.hasUnderrun;
+        finished = status.activePointValid && status.isLast;
+    }
+
+    /**
+     * Sends the current output state to the motor; call from the main loop
+     */
+    public void updateOutput() {
+        motor.setMotionProfile(output);
+    }
+
+    public void setOutput(SetValueMotionProfile output) {
+        this.output = output;
+    }
+
+    /**
+     * Stops following and throws away any points that haven't run
+     */
+    public void end() {
+        output = SetValueMotionProfile.Disable;
+        controller.clearMotionProfileTrajectories();
+        bufferedPoints = 0;
+    }
+
+    /**
+     * @return the points waiting to run, both in the roboRIO buffer and on the controller, including ones pushed
+     * since the last process
+     */
+    public int getBufferedPoints() {
+        return bufferedPoints;
+    }
+
+    /**
+     * @return whether the controller is on the last point of the profile
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return whether the controller ever ran out of points mid profile
+     */
+    public boolean hasUnderrun() {
+        return underrun;
+    }
+}
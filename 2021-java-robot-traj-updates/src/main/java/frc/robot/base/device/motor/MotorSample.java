@@ -0,0 +1,49 @@
+package frc.robot.base.device.motor;
+
+/**
+ * Everything read from an encoder motor at once along with when it was measured
+ * Samples are meant to be reused so reading them every loop doesn't allocate
+ */
+public class MotorSample {
+
+    /**
+     * distance in the config's distance units (feet for the drive train)
+     */
+    public double distance = 0;
+    /**
+     * velocity in the config's velocity units
+     */
+    public double velocity = 0;
+    public double velocityRaw = 0;
+    public double outputPercent = 0;
+    /**
+     * the FPGA time the values were measured at in seconds
+     */
+    public double timestamp = 0;
+    /**
+     * how old the values were when they were read in seconds
+     */
+    public double age = 0;
+    /**
+     * whether the controller reported that it hasn't sent new values in time
+     */
+    public boolean missed = false;
+
+    /**
+     * @param maxAge the oldest a sample can be and still be used in seconds
+     * @return whether the values are too old to trust
+     */
+    public boolean isStale(double maxAge) {
+        return missed || age > maxAge;
+    }
+
+    public void copyFrom(MotorSample other) {
+        this.distance = other.distance;
+        this.velocity = other.velocity;
+        this.velocityRaw = other.velocityRaw;
+        this.outputPercent = other.outputPercent;
+        this.timestamp = other.timestamp;
+        this.age = other.age;
+        this.missed = other.missed;
+    }
+}
@@ -1,10 +1,25 @@
 package frc.robot.base.device.motor;
 
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motion.SetValueMotionProfile;
 import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.DemandType;
 import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.StatusFrame;
 import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
 
+import edu.wpi.first.wpilibj.Timer;
+
+import frc.robot.base.device.CanBus;
+import frc.robot.base.device.CanBus.FrameType;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
 /**
  * A phoenix motor that implements the EncoderMotor interface to allow you to make drive systems generic
  */
@@ -15,17 +30,101 @@ public class PhoenixMotor implements EncoderMotor {
     private double distanceMultiplier;
     private BaseMotorController motor;
 
+    // the last demand passed to the controller library so repeated identical demands skip the call
+    // the library sends the control frame on its own period either way, so this saves API calls, not bus frames
+    private ControlMode lastMode = null;
+    private double lastDemand = 0;
+    private double lastFeedforward = 0;
+    // System.nanoTime so a wall clock change (ex. the roboRIO syncing its time) can't stall or flood the refresh
+    private long lastSendNanos = 0;
+    private long keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private long setCalls = 0;
+    private long setCallsSkipped = 0;
+    private static final AtomicLong totalSetCalls = new AtomicLong();
+    private static final AtomicLong totalSetCallsSkipped = new AtomicLong();
+
+    private static final StatusFrame[] PROFILED_FRAMES = {
+        StatusFrame.Status_1_General,
+        StatusFrame.Status_2_Feedback0,
+        StatusFrame.Status_4_AinTempVbat,
+        StatusFrame.Status_13_Base_PIDF0
+    };
+    private static final int STATUS_FRAME_TIMEOUT_MS = 30;
+    private StatusFrameProfile statusFrameProfile = StatusFrameProfile.DEFAULT;
+    /**
+     * the phoenix default period of the control frame, which is sent whether or not set is called
+     */
+    private static final int CONTROL_FRAME_PERIOD_MS = 10;
+    private static double totalPeriodicFramesPerSecond = 0;
+
+    // bumped every time a config is queued for a slot so an older queued config can tell it has been replaced
+    private static final int SLOT_COUNT = 4;
+    private final AtomicInteger[] configGenerations = new AtomicInteger[SLOT_COUNT];
+    private final AtomicInteger pendingConfigs = new AtomicInteger();
+
+    // the persistent settings the constructor writes, fingerprinted so they're only written when they change
+    private static final double NOMINAL_OUTPUT = 0;
+    private static final double NEUTRAL_DEADBAND = .001;
+    private static final int FINGERPRINT_TIMEOUT_MS = 30;
+    private final String fingerprintKey;
+    private final int baseFingerprint;
+    private final boolean fingerprintMatched;
+    // the fingerprint of the gains in each slot of the controller, 0 if they were never written
+    // only changed on the config thread once the constructor is done
+    private final int[] slotFingerprints = new int[SLOT_COUNT];
+    private static final AtomicInteger configsSkipped = new AtomicInteger();
+
+    // the last time the feedback frame was read without the controller reporting it missing
+    private double lastFrameTime = Double.NaN;
+
+    // every call to the controller is counted here so bus hungry patterns show up per loop
+    private final int canIndex;
+
     public PhoenixMotor(BaseMotorController motor) {
         this(motor, null);
     }
 
     public PhoenixMotor(BaseMotorController motor, EncoderMotorConfig config) {
         this.motor = motor;
-        this.motor.configFactoryDefault();
-        this.motor.configNominalOutputForward(0);
-        this.motor.configNominalOutputReverse(0);
-        this.motor.configNeutralDeadband(.001);
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            configGenerations[slot] = new AtomicInteger();
+        }
+        this.fingerprintKey = motor.getClass().getSimpleName() + motor.getDeviceID();
+        this.canIndex = CanBus.register(fingerprintKey, motor.getBaseID());
+        // the device ID is part of it so a controller that was renumbered never matches
+        this.baseFingerprint = ConfigFingerprints.of(NOMINAL_OUTPUT, NEUTRAL_DEADBAND, motor.getDeviceID());
+        // the controller has to agree with the cache, otherwise it was swapped or reset since the cache was written
+        boolean baseMatched =
+            configGet(() -> this.motor.configGetCustomParam(ConfigFingerprints.CUSTOM_PARAM_INDEX, FINGERPRINT_TIMEOUT_MS)) == baseFingerprint
+            && ConfigFingerprints.matches(fingerprintKey + ".base", baseFingerprint);
+        boolean gainsMatched = false;
+        if (baseMatched) {
+            configsSkipped.incrementAndGet();
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                slotFingerprints[slot] = ConfigFingerprints.get(slotKey(slot));
+            }
+            // same for the gains, ex. a controller moved over from another role with the same ID
+            gainsMatched =
+                configGet(() -> this.motor.configGetCustomParam(ConfigFingerprints.GAINS_PARAM_INDEX, FINGERPRINT_TIMEOUT_MS)) == gainsFingerprint();
+            if (!gainsMatched) {
+                for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                    slotFingerprints[slot] = 0;
+                    ConfigFingerprints.remove(slotKey(slot));
+                }
+            }
+        } else {
+            ConfigFingerprints.clear(fingerprintKey);
+            config(() -> this.motor.configFactoryDefault());
+            config(() -> this.motor.configNominalOutputForward(NOMINAL_OUTPUT));
+            config(() -> this.motor.configNominalOutputReverse(NOMINAL_OUTPUT));
+            config(() -> this.motor.configNeutralDeadband(NEUTRAL_DEADBAND));
+            config(() -> this.motor.configSetCustomParam(baseFingerprint, ConfigFingerprints.CUSTOM_PARAM_INDEX, FINGERPRINT_TIMEOUT_MS));
+            ConfigFingerprints.store(fingerprintKey + ".base", baseFingerprint);
+        }
+        this.fingerprintMatched = baseMatched && gainsMatched;
         this.motor.setSensorPhase(false);
+        addPeriodicFrames(statusFrameProfile.getFramesPerSecond() + 1000d / CONTROL_FRAME_PERIOD_MS);
         if(config != null) {
             setConfig(config);
         } else {
@@ -35,38 +134,262 @@ public class PhoenixMotor implements EncoderMotor {
         }
     }
 
+    /**
+     * Queues the config to be sent to the motor controller on the config thread and switches to its gain slot;
+     * this never blocks
+     * The unit conversions change right away, the gains change once the controller has acknowledged them
+     */
     @Override
     public void setConfig(EncoderMotorConfig config) {
-        int slotIdx = config.PID_LOOP_INDEX;
-        int timeoutMS = config.TIMEOUT_MS;
+        queueGains(config);
+        selectConfig(config);
+    }
 
-        this.motor.config_kF(slotIdx, config.F, timeoutMS);
-        this.motor.config_kP(slotIdx, config.P, timeoutMS);
-        this.motor.config_kI(slotIdx, config.I, timeoutMS);
-        this.motor.config_kD(slotIdx, config.D, timeoutMS);
-        this.motor.config_IntegralZone(slotIdx, config.INTEGRAL_ZONE, timeoutMS);
+    /**
+     * Sends every config to its own gain slot so switching between them later is just a slot select
+     */
+    @Override
+    public void preloadConfigs(EncoderMotorConfig... configs) {
+        for (EncoderMotorConfig config : configs) {
+            queueGains(config);
+        }
+    }
 
-        this.motor.configSelectedFeedbackSensor(FeedbackDevice.QuadEncoder, slotIdx, timeoutMS);
+    /**
+     * Queues the config's gains for its slot without switching to it
+     * @return a future that completes with whether the controller acknowledged every call; a write that was replaced
+     * by a newer one for the same slot before it started completes with true
+     */
+    @Override
+    public CompletableFuture<Boolean> loadConfig(EncoderMotorConfig config) {
+        return queueGains(config);
+    }
 
+    /**
+     * Switches to the gain slot of a config that was already sent; this is a single control frame
+     */
+    @Override
+    public void selectConfig(EncoderMotorConfig config) {
+        this.motor.selectProfileSlot(config.PROFILE_SLOT, config.PID_LOOP_INDEX);
+        CanBus.record(canIndex, FrameType.CONTROL);
         inputMultiplier = config.INPUT_MULTIPLIER;
         outputMultiplier = config.OUTPUT_MULTIPLIER;
         distanceMultiplier = config.DISTANCE_MULTIPLIER;
     }
 
+    private CompletableFuture<Boolean> queueGains(EncoderMotorConfig config) {
+        int slotIdx = config.PROFILE_SLOT;
+        int pidIdx = config.PID_LOOP_INDEX;
+        int timeoutMS = config.TIMEOUT_MS;
+        String slotKey = slotKey(slotIdx);
+        int fingerprint = ConfigFingerprints.of(config);
+
+        AtomicInteger slotGeneration = configGenerations[slotIdx];
+        int generation = slotGeneration.incrementAndGet();
+        pendingConfigs.incrementAndGet();
+        return ConfigApplier.submit("motor " + motor.getDeviceID() + " slot " + slotIdx, step -> {
+            try {
+                if (generation != slotGeneration.get()) {
+                    // a newer config for this slot is already queued behind this one
+                    return true;
+                }
+                if (slotFingerprints[slotIdx] == fingerprint) {
+                    // the controller already has exactly these gains
+                    configsSkipped.incrementAndGet();
+                    return true;
+                }
+                // the controller's copy stops covering this slot while it's written, so a half written slot never matches
+                slotFingerprints[slotIdx] = 0;
+                int withoutSlot = gainsFingerprint();
+                boolean ok = step.run(() -> config(() -> this.motor.configSetCustomParam(
+                        withoutSlot, ConfigFingerprints.GAINS_PARAM_INDEX, timeoutMS)))
+                    && step.run(() -> config(() -> this.motor.config_kF(slotIdx, config.F, timeoutMS)))
+                    && step.run(() -> config(() -> this.motor.config_kP(slotIdx, config.P, timeoutMS)))
+                    && step.run(() -> config(() -> this.motor.config_kI(slotIdx, config.I, timeoutMS)))
+                    && step.run(() -> config(() -> this.motor.config_kD(slotIdx, config.D, timeoutMS)))
+                    && step.run(() -> config(() -> this.motor.config_IntegralZone(slotIdx, config.INTEGRAL_ZONE, timeoutMS)))
+                    && step.run(() -> config(() -> this.motor.configSelectedFeedbackSensor(FeedbackDevice.QuadEncoder, pidIdx, timeoutMS)));
+                if (ok) {
+                    slotFingerprints[slotIdx] = fingerprint;
+                    int gainsFingerprint = gainsFingerprint();
+                    ok = step.run(() -> config(() -> this.motor.configSetCustomParam(
+                        gainsFingerprint, ConfigFingerprints.GAINS_PARAM_INDEX, timeoutMS)));
+                }
+                if (ok) {
+                    ConfigFingerprints.store(slotKey, fingerprint);
+                } else {
+                    slotFingerprints[slotIdx] = 0;
+                    ConfigFingerprints.remove(slotKey);
+                }
+                return ok;
+            } finally {
+                pendingConfigs.decrementAndGet();
+            }
+        });
+    }
+
+    private String slotKey(int slot) {
+        return fingerprintKey + ".slot" + slot;
+    }
+
+    /**
+     * @return a fingerprint of the gains in every slot, 0 (the factory default) if none were ever written
+     */
+    private int gainsFingerprint() {
+        double[] values = new double[SLOT_COUNT];
+        boolean any = false;
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            values[slot] = slotFingerprints[slot];
+            any |= slotFingerprints[slot] != 0;
+        }
+        return any ? ConfigFingerprints.of(values) : 0;
+    }
+
+    /**
+     * Sends a config call to the controller and counts it on the bus; this blocks until the controller answers
+     * @return the error code of the call
+     */
+    private ErrorCode config(Supplier<ErrorCode> call) {
+        CanBus.record(canIndex, FrameType.CONFIG);
+        return call.get();
+    }
+
+    private int configGet(Supplier<Integer> call) {
+        CanBus.record(canIndex, FrameType.CONFIG);
+        return call.get();
+    }
+
+    /**
+     * @return whether the controller's persistent settings and gains already matched on startup so they weren't rewritten
+     */
+    public boolean wasFingerprintMatched() {
+        return fingerprintMatched;
+    }
+
+    /**
+     * @return how many base configs and gain slots were skipped across every phoenix motor because they already matched
+     */
+    public static int getConfigsSkipped() {
+        return configsSkipped.get();
+    }
+
+    /**
+     * @return whether a config has been queued but not finished sending yet
+     */
+    @Override
+    public boolean isConfigPending() {
+        return pendingConfigs.get() > 0;
+    }
+
     @Override
     public double setVelocity(double velocity) {
         double rawOutput = velocity * outputMultiplier;
-        motor.set(ControlMode.Velocity, rawOutput);
+        set(ControlMode.Velocity, rawOutput);
+        return rawOutput;
+    }
+
+    /**
+     * Sets the velocity and sends the feedforward as an arbitrary feedforward demand
+     */
+    @Override
+    public double setVelocity(double velocity, double feedforward) {
+        double rawOutput = velocity * outputMultiplier;
+        set(ControlMode.Velocity, rawOutput, feedforward);
         return rawOutput;
     }
 
     @Override
     public void setPercentOutput(double percent) {
-        motor.set(ControlMode.PercentOutput, percent);
+        set(ControlMode.PercentOutput, percent);
+    }
+
+    /**
+     * Runs whatever motion profile has been streamed into the controller
+     * @param value whether to run the profile, hold the last point or stop
+     */
+    public void setMotionProfile(SetValueMotionProfile value) {
+        set(ControlMode.MotionProfile, value.value);
+    }
+
+    /**
+     * Passes a demand to the controller library unless it's the same as the last one and was passed recently
+     * @param mode the control mode
+     * @param demand the demand in the units of the control mode
+     */
+    private void set(ControlMode mode, double demand) {
+        set(mode, demand, 0);
+    }
+
+    /**
+     * @param feedforward an arbitrary feedforward added to the output (-1 to 1), 0 for none
+     */
+    private void set(ControlMode mode, double demand, double feedforward) {
+        long now = System.nanoTime();
+        if (mode == lastMode && demand == lastDemand && feedforward == lastFeedforward && now - lastSendNanos < keepAliveNanos) {
+            setCallsSkipped++;
+            totalSetCallsSkipped.incrementAndGet();
+            return;
+        }
+        if (feedforward == 0) {
+            motor.set(mode, demand);
+        } else {
+            motor.set(mode, demand, DemandType.ArbitraryFeedForward, feedforward);
+        }
+        lastFeedforward = feedforward;
+        CanBus.record(canIndex, FrameType.DEMAND);
+        lastMode = mode;
+        lastDemand = demand;
+        lastSendNanos = now;
+        setCalls++;
+        totalSetCalls.incrementAndGet();
+    }
+
+    /**
+     * Sets how often an unchanged demand is passed to the controller library anyway
+     * @param keepAliveMs the refresh period in milliseconds, 0 passes every call
+     */
+    public void setKeepAlive(long keepAliveMs) {
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveMs);
+    }
+
+    /**
+     * Makes the next demand get passed on even if it hasn't changed
+     */
+    public void invalidateDemand() {
+        this.lastMode = null;
+    }
+
+    /**
+     * @return how many set calls were passed to the controller library
+     */
+    public long getSetCalls() {
+        return setCalls;
+    }
+
+    /**
+     * @return how many set calls were skipped because the demand was unchanged
+     */
+    public long getSetCallsSkipped() {
+        return setCallsSkipped;
+    }
+
+    /**
+     * @return how many set calls were passed to the controller library across every phoenix motor
+     */
+    public static long getTotalSetCalls() {
+        return totalSetCalls.get();
+    }
+
+    /**
+     * @return how many set calls were skipped because they were unchanged across every phoenix motor
+     */
+    public static long getTotalSetCallsSkipped() {
+        return totalSetCallsSkipped.get();
     }
 
     @Override
     public double getOutputPercent() {
+        CanBus.record(canIndex, FrameType.SENSOR_READ);
         return motor.getMotorOutputPercent();
     }
 
@@ -97,6 +420,7 @@ public class PhoenixMotor implements EncoderMotor {
      */
     @Override
     public double getVelocityRaw() {
+        CanBus.record(canIndex, FrameType.SENSOR_READ);
         return motor.getSelectedSensorVelocity();
     }
 
@@ -106,25 +430,118 @@ public class PhoenixMotor implements EncoderMotor {
      */
     @Override
     public double getDistance() {
+        CanBus.record(canIndex, FrameType.SENSOR_READ);
         return motor.getSelectedSensorPosition() * distanceMultiplier;
     }
 
+    /**
+     * Reads every feedback value at once
+     * The controller doesn't timestamp its frames, so the values are assumed to be half a feedback period old
+     * when the frame arrived on time, and older by however long the controller has been reporting them missing
+     */
+    @Override
+    public MotorSample sample(MotorSample sample) {
+        double now = Timer.getFPGATimestamp();
+        double position = motor.getSelectedSensorPosition();
+        boolean missed = isMissed(motor.getLastError());
+        double velocityRaw = motor.getSelectedSensorVelocity();
+        double output = motor.getMotorOutputPercent();
+        CanBus.record(canIndex, FrameType.SENSOR_READ, 3);
+
+        if (!missed || Double.isNaN(lastFrameTime)) {
+            lastFrameTime = now;
+        }
+        sample.distance = position * distanceMultiplier;
+        sample.velocityRaw = velocityRaw;
+        sample.velocity = velocityRaw * inputMultiplier;
+        sample.outputPercent = output;
+        sample.age = (now - lastFrameTime) + statusFrameProfile.FEEDBACK_MS * 0.5e-3d;
+        sample.timestamp = now - sample.age;
+        sample.missed = missed;
+        return sample;
+    }
+
+    private static boolean isMissed(ErrorCode error) {
+        return error == ErrorCode.SigNotUpdated || error == ErrorCode.CAN_MSG_STAMP_NOT_FOUND;
+    }
+
     @Override
     public void resetDistance() {
         motor.setSelectedSensorPosition(0);
+        CanBus.record(canIndex, FrameType.SENSOR_SET);
+    }
+
+    /**
+     * Sets how often the motor controller broadcasts its status frames
+     * @param profile the status frame profile to use
+     * @return the motor for convenience
+     */
+    public PhoenixMotor setStatusFrameProfile(StatusFrameProfile profile) {
+        for (StatusFrame frame : PROFILED_FRAMES) {
+            config(() -> this.motor.setStatusFramePeriod(frame, profile.getPeriod(frame), STATUS_FRAME_TIMEOUT_MS));
+        }
+        addPeriodicFrames(profile.getFramesPerSecond() - statusFrameProfile.getFramesPerSecond());
+        statusFrameProfile = profile;
+        return this;
+    }
+
+    // motors can be created on several threads at once during startup
+    private static synchronized void addPeriodicFrames(double framesPerSecond) {
+        totalPeriodicFramesPerSecond += framesPerSecond;
+    }
+
+    public StatusFrameProfile getStatusFrameProfile() {
+        return statusFrameProfile;
+    }
+
+    /**
+     * @return the frames per second every phoenix motor sends on a timer: the profiled status frames and the control frame
+     */
+    public static synchronized double getTotalPeriodicFramesPerSecond() {
+        return totalPeriodicFramesPerSecond;
+    }
+
+    /**
+     * @return an estimate of how much of the CAN bus the periodic frames use in percent
+     */
+    public static synchronized double getEstimatedPeriodicBusLoad() {
+        return StatusFrameProfile.busLoad(totalPeriodicFramesPerSecond) * 100;
     }
 
     public void follow(PhoenixMotor motor) {
         this.motor.follow(motor.motor);
+        CanBus.record(canIndex, FrameType.CONTROL);
+        // following changes the control mode behind our back
+        invalidateDemand();
     }
     
     public void setNeutralMode(NeutralMode mode) {
         this.motor.setNeutralMode(mode);
+        CanBus.record(canIndex, FrameType.CONTROL);
+    }
+
+    BaseMotorController getController() {
+        return motor;
+    }
+
+    double getDistanceMultiplier() {
+        return distanceMultiplier;
+    }
+
+    double getOutputMultiplier() {
+        return outputMultiplier;
+    }
+
+    /**
+     * @return the index this motor's calls are counted under in CanBus
+     */
+    public int getCanIndex() {
+        return canIndex;
     }
     
     public void setRampTime(double time) {
-        this.motor.configOpenloopRamp(time);
-        this.motor.configClosedloopRamp(time);
+        config(() -> this.motor.configOpenloopRamp(time));
+        config(() -> this.motor.configClosedloopRamp(time));
     }
 
 }
\ No newline at end of file
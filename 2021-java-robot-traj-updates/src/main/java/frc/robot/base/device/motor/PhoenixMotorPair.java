@@ -3,6 +3,8 @@ package frc.robot.base.device.motor;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
 import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A pair of phoenix motors where a child follows a parent
  */
@@ -12,8 +14,17 @@ public class PhoenixMotorPair implements EncoderMotor {
     private PhoenixMotor child;
 
     public PhoenixMotorPair(BaseMotorController parent, BaseMotorController child, EncoderMotorConfig config) {
-        this.parent = new PhoenixMotor(parent, config);
-        this.child = new PhoenixMotor(child);
+        this(parent, child, config, StatusFrameProfile.DEFAULT);
+    }
+
+    /**
+     * @param parentProfile the status frame profile of the parent; the child always uses the follower profile
+     */
+    public PhoenixMotorPair(
+            BaseMotorController parent, BaseMotorController child,
+            EncoderMotorConfig config, StatusFrameProfile parentProfile) {
+        this.parent = new PhoenixMotor(parent, config).setStatusFrameProfile(parentProfile);
+        this.child = new PhoenixMotor(child).setStatusFrameProfile(StatusFrameProfile.FOLLOWER);
         this.child.follow(this.parent);
     }
 
@@ -22,6 +33,11 @@ public class PhoenixMotorPair implements EncoderMotor {
         return parent.setVelocity(velocity); 
     }
 
+    @Override
+    public double setVelocity(double velocity, double feedforward) {
+        return parent.setVelocity(velocity, feedforward);
+    }
+
     @Override
     public void setPercentOutput(double percent) {
         parent.setPercentOutput(percent);
@@ -42,6 +58,11 @@ public class PhoenixMotorPair implements EncoderMotor {
         return parent.getOutputPercent();
     }
 
+    @Override
+    public MotorSample sample(MotorSample sample) {
+        return parent.sample(sample);
+    }
+
     @Override
     public EncoderMotor setInverted(boolean inverted) {
         parent.setInverted(inverted);
@@ -72,6 +93,42 @@ public class PhoenixMotorPair implements EncoderMotor {
         parent.setConfig(config);
     }
 
+    @Override
+    public void preloadConfigs(EncoderMotorConfig... configs) {
+        parent.preloadConfigs(configs);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> loadConfig(EncoderMotorConfig config) {
+        return parent.loadConfig(config);
+    }
+
+    @Override
+    public void selectConfig(EncoderMotorConfig config) {
+        parent.selectConfig(config);
+    }
+
+    @Override
+    public boolean isConfigPending() {
+        return parent.isConfigPending();
+    }
+
+    /**
+     * @return the motor that the other one follows, which is the one that runs closed loop
+     */
+    public PhoenixMotor getParent() {
+        return parent;
+    }
+
+    public PhoenixMotorPair setStatusFrameProfile(StatusFrameProfile profile) {
+        parent.setStatusFrameProfile(profile);
+        return this;
+    }
+
+    public void setKeepAlive(long keepAliveMs) {
+        parent.setKeepAlive(keepAliveMs);
+    }
+
     public void setNeutralMode(NeutralMode mode) {
         parent.setNeutralMode(mode);
         child.setNeutralMode(mode);
@@ -0,0 +1,289 @@
+package frc.robot.base.device.motor;
+
+import com.ctre.phoenix.motorcontrol.NeutralMode;
+import frc.robot.base.device.CanBus;
+import frc.robot.base.device.CanBus.FrameType;
+
+import edu.wpi.first.wpilibj.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A simulated encoder motor that models DC motors driving a load through a gearbox
+ * The velocity loop works like a Talon's: F/P/I/D on native units (counts per 100ms) run every millisecond
+ * Use it in place of PhoenixMotor or PhoenixMotorPair to run subsystems without any hardware
+ */
+public class SimEncoderMotor implements EncoderMotor {
+
+    /**
+     * the motors a simulated motor can be made of
+     */
+    public enum MotorType {
+        CIM(5330, 2.41, 131, 2.7),
+        MINI_CIM(5840, 1.41, 89, 3),
+        PRO_775(18730, 0.71, 134, 0.7);
+
+        public final double FREE_SPEED_RPM;
+        public final double STALL_TORQUE;
+        public final double STALL_CURRENT;
+        public final double FREE_CURRENT;
+
+        MotorType(double freeSpeedRpm, double stallTorque, double stallCurrent, double freeCurrent) {
+            FREE_SPEED_RPM = freeSpeedRpm;
+            STALL_TORQUE = stallTorque;
+            STALL_CURRENT = stallCurrent;
+            FREE_CURRENT = freeCurrent;
+        }
+    }
+
+    private static final double NOMINAL_VOLTAGE = 12;
+    private static final double STEP_SECONDS = 0.001;
+    private static final double NEUTRAL_DEADBAND = .001;
+
+    private static final List<SimEncoderMotor> motors = new ArrayList<>();
+    // the calls a real controller would see are counted the same way so sim runs can check the bus budget
+    private static final int CONFIG_CALLS_PER_SLOT = 6;
+    private final int canIndex;
+
+    // motor constants for all the motors together
+    private final double resistance;
+    private final double kV; // rad/s per volt
+    private final double kT; // Nm per amp
+    private final double gearing;
+    private final double inertia; // kg m^2 at the output
+    private final double countsPerRadian;
+
+    // state at the output shaft, positive the way the motor turns with positive voltage before any inversion
+    private double position = 0; // rad
+    private double velocity = 0; // rad/s
+    private double current = 0;
+
+    // control
+    private boolean velocityMode = false;
+    private double demand = 0; // percent or counts per 100ms
+    private double feedforward = 0; // percent added on top of the velocity loop
+    private double output = 0;
+    private double integral = 0;
+    private double lastError = 0;
+    private boolean inverted = false;
+    private boolean brake = false;
+    private double rampTime = 0;
+
+    // gains, one set per slot like the real controller
+    private final EncoderMotorConfig[] slots = new EncoderMotorConfig[4];
+    private EncoderMotorConfig active;
+
+    /**
+     * @param config the config, used for both unit conversions and gains
+     * @param countsPerRevolution encoder counts per revolution of the output
+     * @param type the kind of motor in the gearbox
+     * @param motorCount how many of those motors are in the gearbox
+     * @param gearing motor revolutions per output revolution
+     * @param inertia the moment of inertia of the load at the output in kg m^2
+     */
+    public SimEncoderMotor(
+            EncoderMotorConfig config, int countsPerRevolution,
+            MotorType type, int motorCount, double gearing, double inertia) {
+        double stallCurrent = type.STALL_CURRENT * motorCount;
+        this.resistance = NOMINAL_VOLTAGE / stallCurrent;
+        this.kV = Math.toRadians(type.FREE_SPEED_RPM * 6) / (NOMINAL_VOLTAGE - type.FREE_CURRENT * resistance * motorCount);
+        this.kT = type.STALL_TORQUE * motorCount / stallCurrent;
+        this.gearing = gearing;
+        this.inertia = inertia;
+        this.countsPerRadian = countsPerRevolution / (2 * Math.PI);
+        synchronized (motors) {
+            this.canIndex = CanBus.register("SimEncoderMotor" + motors.size(), 0);
+            motors.add(this);
+        }
+        setConfig(config);
+    }
+
+    /**
+     * Steps every simulated motor forward; call once per loop from simulationPeriodic
+     * @param dt how much time to simulate in seconds
+     */
+    public static void updateAll(double dt) {
+        synchronized (motors) {
+            for (SimEncoderMotor motor : motors) {
+                motor.update(dt);
+            }
+        }
+    }
+
+    /**
+     * Steps the simulation forward in 1ms steps, which is how often a Talon runs its control loop
+     * @param dt how much time to simulate in seconds
+     */
+    public void update(double dt) {
+        for (double t = 0; t < dt - 1e-9; t += STEP_SECONDS) {
+            step(Math.min(STEP_SECONDS, dt - t));
+        }
+    }
+
+    private void step(double dt) {
+        // --------controller
+        double target;
+        if (velocityMode) {
+            double error = demand - getVelocityRaw();
+            if (active.INTEGRAL_ZONE != 0 && Math.abs(error) > active.INTEGRAL_ZONE) {
+                integral = 0;
+            } else {
+                integral += error;
+            }
+            target = (active.F * demand + active.P * error + active.I * integral + active.D * (error - lastError)) / 1023
+                + feedforward;
+            lastError = error;
+        } else {
+            target = demand;
+        }
+        target = Math.max(-1, Math.min(1, target));
+        if (rampTime > 0) {
+            double maxChange = dt / rampTime;
+            target = Math.max(output - maxChange, Math.min(output + maxChange, target));
+        }
+        output = target;
+
+        // --------motor and load
+        // inverting flips what the controller applies and what its sensor reports, like a Talon
+        double motorSpeed = velocity * gearing;
+        double torque;
+        if (Math.abs(output) < NEUTRAL_DEADBAND && !brake) {
+            // coasting, the controller isn't driving the motor at all
+            current = 0;
+            torque = 0;
+        } else {
+            // neutral brake shorts the windings which is the same as driving 0 volts
+            double voltage = Math.abs(output) < NEUTRAL_DEADBAND ? 0 : output * getDirection() * NOMINAL_VOLTAGE;
+            current = (voltage - motorSpeed / kV) / resistance;
+            torque = kT * current;
+        }
+        velocity += torque * gearing / inertia * dt;
+        position += velocity * dt;
+    }
+
+    @Override
+    public void setConfig(EncoderMotorConfig config) {
+        preloadConfigs(config);
+        selectConfig(config);
+    }
+
+    @Override
+    public void preloadConfigs(EncoderMotorConfig... configs) {
+        for (EncoderMotorConfig config : configs) {
+            slots[config.PROFILE_SLOT] = config;
+            CanBus.record(canIndex, FrameType.CONFIG, CONFIG_CALLS_PER_SLOT);
+        }
+    }
+
+    @Override
+    public void selectConfig(EncoderMotorConfig config) {
+        EncoderMotorConfig loaded = slots[config.PROFILE_SLOT];
+        active = loaded != null ? loaded : config;
+        CanBus.record(canIndex, FrameType.CONTROL);
+    }
+
+    @Override
+    public double setVelocity(double velocity) {
+        return setVelocity(velocity, 0);
+    }
+
+    @Override
+    public double setVelocity(double velocity, double feedforward) {
+        this.feedforward = feedforward;
+        double rawOutput = velocity * active.OUTPUT_MULTIPLIER;
+        if (!velocityMode) {
+            integral = 0;
+            lastError = 0;
+        }
+        velocityMode = true;
+        demand = rawOutput;
+        CanBus.record(canIndex, FrameType.DEMAND);
+        return rawOutput;
+    }
+
+    @Override
+    public void setPercentOutput(double percent) {
+        velocityMode = false;
+        demand = percent;
+        CanBus.record(canIndex, FrameType.DEMAND);
+    }
+
+    @Override
+    public double getOutputPercent() {
+        CanBus.record(canIndex, FrameType.SENSOR_READ);
+        return output;
+    }
+
+    /**
+     * @return the encoder velocity in counts per 100ms like a Talon reports it
+     */
+    @Override
+    public double getVelocityRaw() {
+        CanBus.record(canIndex, FrameType.SENSOR_READ);
+        return velocity * getDirection() * countsPerRadian * 0.1;
+    }
+
+    @Override
+    public double getVelocity() {
+        return getVelocityRaw() * active.INPUT_MULTIPLIER;
+    }
+
+    @Override
+    public double getDistance() {
+        CanBus.record(canIndex, FrameType.SENSOR_READ);
+        return position * getDirection() * countsPerRadian * active.DISTANCE_MULTIPLIER;
+    }
+
+    /**
+     * The simulation has no bus delay so samples are always fresh
+     */
+    @Override
+    public MotorSample sample(MotorSample sample) {
+        sample.distance = getDistance();
+        sample.velocityRaw = getVelocityRaw();
+        sample.velocity = sample.velocityRaw * active.INPUT_MULTIPLIER;
+        sample.outputPercent = getOutputPercent();
+        sample.timestamp = Timer.getFPGATimestamp();
+        sample.age = 0;
+        sample.missed = false;
+        return sample;
+    }
+
+    @Override
+    public void resetDistance() {
+        position = 0;
+        CanBus.record(canIndex, FrameType.SENSOR_SET);
+    }
+
+    @Override
+    public SimEncoderMotor setInverted(boolean inverted) {
+        this.inverted = inverted;
+        return this;
+    }
+
+    @Override
+    public SimEncoderMotor invert() {
+        this.inverted = !this.inverted;
+        return this;
+    }
+
+    private double getDirection() {
+        return inverted ? -1 : 1;
+    }
+
+    public void setNeutralMode(NeutralMode mode) {
+        this.brake = mode == NeutralMode.Brake;
+    }
+
+    public void setRampTime(double time) {
+        this.rampTime = time;
+    }
+
+    /**
+     * @return the current drawn by all the motors together in amps
+     */
+    public double getCurrent() {
+        return current;
+    }
+}
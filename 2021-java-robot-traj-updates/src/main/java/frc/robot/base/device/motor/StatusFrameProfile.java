@@ -0,0 +1,90 @@
+package frc.robot.base.device.motor;
+
+import com.ctre.phoenix.motorcontrol.StatusFrame;
+import frc.robot.base.device.CanBus;
+
+/**
+ * How often a phoenix motor controller should broadcast its status frames
+ * Faster feedback makes the sensor values we read fresher, slower frames leave room on the CAN bus
+ */
+public enum StatusFrameProfile {
+    /**
+     * closed loop motors whose sensors are read every loop (drive masters, shooter wheels)
+     */
+    FAST_FEEDBACK(10, 10, 160, 160),
+    /**
+     * the phoenix defaults
+     */
+    DEFAULT(10, 20, 160, 160),
+    /**
+     * open loop motors where only the output percent is looked at on the dashboard
+     */
+    OPEN_LOOP(50, 255, 255, 255),
+    /**
+     * followers that nobody reads from at all
+     */
+    FOLLOWER(100, 255, 255, 255);
+
+    /**
+     * general status (output percent, faults, limit switches)
+     */
+    public final int GENERAL_MS;
+    /**
+     * selected sensor position and velocity
+     */
+    public final int FEEDBACK_MS;
+    /**
+     * analog input, temperature and bus voltage
+     */
+    public final int ANALOG_TEMP_VBAT_MS;
+    /**
+     * closed loop error and integral accumulator
+     */
+    public final int PIDF0_MS;
+
+    StatusFrameProfile(int generalMs, int feedbackMs, int analogTempVbatMs, int pidf0Ms) {
+        GENERAL_MS = generalMs;
+        FEEDBACK_MS = feedbackMs;
+        ANALOG_TEMP_VBAT_MS = analogTempVbatMs;
+        PIDF0_MS = pidf0Ms;
+    }
+
+    /**
+     * @return the period this profile uses for the frame, or -1 if the profile leaves it alone
+     */
+    public int getPeriod(StatusFrame frame) {
+        switch (frame) {
+            case Status_1_General:
+                return GENERAL_MS;
+            case Status_2_Feedback0:
+                return FEEDBACK_MS;
+            case Status_4_AinTempVbat:
+                return ANALOG_TEMP_VBAT_MS;
+            case Status_13_Base_PIDF0:
+                return PIDF0_MS;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @return how many frames per second one controller sends with this profile
+     */
+    public double getFramesPerSecond() {
+        return 1000d / GENERAL_MS + 1000d / FEEDBACK_MS + 1000d / ANALOG_TEMP_VBAT_MS + 1000d / PIDF0_MS;
+    }
+
+    /**
+     * @return the fraction of a 1Mbps bus one controller uses with this profile (0 to 1)
+     */
+    public double getBusLoad() {
+        return busLoad(getFramesPerSecond());
+    }
+
+    /**
+     * @return the fraction of a 1Mbps bus the given number of frames per second uses (0 to 1)
+     */
+    public static double busLoad(double framesPerSecond) {
+        return framesPerSecond * CanBus.BITS_PER_FRAME / CanBus.BUS_BITS_PER_SECOND;
+    }
+}
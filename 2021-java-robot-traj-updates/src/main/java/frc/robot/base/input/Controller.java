@@ -1,56 +1,96 @@
 package frc.robot.base.input;
 
-import java.util.HashMap;
-
 import edu.wpi.first.wpilibj.Joystick;
 
+/**
+ * A controller that reads everything once per loop (update) and answers every query from that snapshot,
+ * so asking for the same button several times in a loop doesn't go back to the driver station each time
+ */
 public class Controller {
 
-    private Joystick joystick;
-    private HashMap<Integer, Boolean> buttonsPressed;
-    private HashMap<Integer, Boolean> axisPressed;
+    private static final double AXIS_DOWN = 0.5;
+    private static InputSource source = InputSource.DRIVER_STATION;
+
+    private final Joystick joystick;
+
+    private final ControllerState state = new ControllerState();
+    private int lastButtons = 0;
+    // bit n is whether the axis with id n is past AXIS_DOWN
+    private int axesDown = 0;
+    private int lastAxesDown = 0;
 
     public Controller(Joystick joystick) {
         this.joystick = joystick;
-        this.buttonsPressed = new HashMap<>();
-        this.axisPressed = new HashMap<>();
-        
-        for (Button button : Button.values()) {
-            int id = button.getId();
-            buttonsPressed.put(id, false);
-        }
     }
-    
+
     public Controller(int port) {
         this(new Joystick(port));
     }
 
+    /**
+     * Takes this loop's snapshot; call once at the start of each loop before anything reads the controller
+     */
+    public void update() {
+        lastButtons = state.buttons;
+        lastAxesDown = axesDown;
+
+        source.read(joystick.getPort(), state);
+        int down = 0;
+        for (int i = 0; i < ControllerState.AXES; i++) {
+            if (Math.abs(state.axes[i]) > AXIS_DOWN) {
+                down |= 1 << i;
+            }
+        }
+        axesDown = down;
+    }
+
+    /**
+     * Changes where every controller reads from, ex. to replay a recorded session
+     */
+    public static void setSource(InputSource inputSource) {
+        source = inputSource;
+    }
+
+    private static int buttonBit(Button button) {
+        return 1 << (button.getId() - 1);
+    }
+
     /**
      * @param button the button you want to specify
      * @return whether the specified button is current being pressed
      */
     public boolean buttonDown(Button button) {
-        return joystick.getRawButton(button.getId());
+        return (state.buttons & buttonBit(button)) != 0;
     }
 
     /**
      * Returns true if the button was "just pressed"
-     * 
+     *
      * @param button the button you want to specify
      * @return whether the button was pressed but not during the loop before
      */
     public boolean buttonPressed(Button button) {
-        return !buttonsPressed.get(button.getId()) && buttonDown(button);
+        return (state.buttons & ~lastButtons & buttonBit(button)) != 0;
+    }
+
+    /**
+     * Returns true if the button was "just released"
+     *
+     * @param button the button you want to specify
+     * @return whether the button was pressed during the loop before but isn't now
+     */
+    public boolean buttonReleased(Button button) {
+        return (~state.buttons & lastButtons & buttonBit(button)) != 0;
     }
 
     /**
      * Returns the value of an axis on the controller
-     * 
+     *
      * @param axis the axis you want to measure
      * @return the value of the axis
      */
     public double getAxis(Axis axis) {
-        return joystick.getRawAxis(axis.getId());
+        return state.axes[axis.getId()];
     }
 
     /**
@@ -59,7 +99,7 @@ public class Controller {
      * @return whether the value is > 0.5 or < -0.5
      */
     public boolean axisDown(Axis axis) {
-        return Math.abs(joystick.getRawAxis(axis.getId())) > 0.5;
+        return (axesDown & (1 << axis.getId())) != 0;
     }
 
     /**
@@ -68,30 +108,27 @@ public class Controller {
      * @return whether the value is > 0.5 or < -0.5 but not during the loop before
      */
     public boolean axisPressed(Axis axis) {
-        return !axisPressed.get(axis.getId()) && axisDown(axis);
+        return (axesDown & ~lastAxesDown & (1 << axis.getId())) != 0;
     }
 
     /**
      * Returns the value of a pov on the controller
-     * 
+     *
      * @param pov the pov you want to measure
      * @return the angle of the POV in degrees, or -1 if the POV is not pressed.
      */
     public int getPov(Pov pov) {
-        return joystick.getPOV(pov.getId());
+        return state.povs[pov.getId()];
     }
 
     /**
-     * A method that should be run after the main periodic code;
-     * makes buttonPressed(Button button) work
+     * @return this loop's snapshot; don't change it
      */
-    public void postPeriodic() {
-        for (Button button : Button.values()) {
-            buttonsPressed.put(button.getId(), buttonDown(button));
-        }
-        for(Axis axis : Axis.values()) {
-            axisPressed.put(axis.getId(), axisDown(axis));
-        }
+    public ControllerState getState() {
+        return state;
     }
 
-}
\ No newline at end of file
+    public int getPort() {
+        return joystick.getPort();
+    }
+}
@@ -0,0 +1,57 @@
+package frc.robot.base.input;
+
+/**
+ * Everything a controller reported in one loop
+ */
+public class ControllerState {
+
+    public static final int AXES = Axis.values().length;
+    public static final int POVS = Pov.values().length;
+
+    /**
+     * bit n is the button with id n + 1, the same layout the driver station uses
+     */
+    public int buttons = 0;
+    /**
+     * indexed by axis id
+     */
+    public final double[] axes = new double[AXES];
+    /**
+     * indexed by pov id, -1 when not pressed
+     */
+    public final int[] povs = new int[POVS];
+
+    public ControllerState() {
+        clear();
+    }
+
+    /**
+     * Sets it to nothing pressed
+     */
+    public void clear() {
+        buttons = 0;
+        for (int i = 0; i < AXES; i++) {
+            axes[i] = 0;
+        }
+        for (int i = 0; i < POVS; i++) {
+            povs[i] = -1;
+        }
+    }
+
+    public void copyFrom(ControllerState other) {
+        buttons = other.buttons;
+        System.arraycopy(other.axes, 0, axes, 0, AXES);
+        System.arraycopy(other.povs, 0, povs, 0, POVS);
+    }
+
+    public boolean sameAs(ControllerState other) {
+        if (buttons != other.buttons) return false;
+        for (int i = 0; i < AXES; i++) {
+            if (axes[i] != other.axes[i]) return false;
+        }
+        for (int i = 0; i < POVS; i++) {
+            if (povs[i] != other.povs[i]) return false;
+        }
+        return true;
+    }
+}
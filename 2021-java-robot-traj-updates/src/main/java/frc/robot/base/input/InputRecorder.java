@@ -0,0 +1,183 @@
+package frc.robot.base.input;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Records every controller's snapshot each loop to a binary file that InputReplay can play back
+ * A loop only stores the controllers that changed since the loop before, so a session is usually a few hundred KB
+ * The robot loop only copies the snapshots into a preallocated ring and a background thread writes them, so recording
+ * never waits on the file; if the writer falls a whole ring behind, loops are dropped until it catches up
+ *
+ * File layout (big endian):
+ *   header: int MAGIC, short VERSION, byte controller count, then one byte port per controller
+ *   each loop: double timestamp, byte mask of the controllers that changed (bit i = controller i), then for each
+ *   changed controller: int buttons, AXES doubles, POVS shorts
+ */
+public class InputRecorder {
+
+    public static final int MAGIC = 0x46524349; // "FRCI"
+    public static final short VERSION = 1;
+    public static final int MAX_CONTROLLERS = 8;
+
+    private static final int CAPACITY = 256; // must be a power of 2
+    private static final int MASK = CAPACITY - 1;
+    private static final long DRAIN_PERIOD_MS = 20;
+
+    private final List<Controller> controllers;
+    // the last state queued for each controller, to tell what changed
+    private final ControllerState[] lastQueued;
+    private final DataOutputStream out;
+
+    // one loop per slot; a slot is only filled again once the writer has moved past it
+    private final double[] times = new double[CAPACITY];
+    private final int[] masks = new int[CAPACITY];
+    private final ControllerState[][] states;
+    private volatile long writeSequence = 0;
+    private volatile long readSequence = 0;
+    private volatile boolean closed = false;
+
+    private int frames = 0;
+    private int dropped = 0;
+    private boolean firstFrame = true;
+
+    /**
+     * @param file where to write the recording; it's replaced if it already exists
+     * @param controllers the controllers to record, in the order they're stored
+     */
+    public InputRecorder(File file, List<Controller> controllers) throws IOException {
+        if (controllers.size() > MAX_CONTROLLERS) {
+            throw new IllegalArgumentException("Only " + MAX_CONTROLLERS + " controllers can be recorded");
+        }
+        this.controllers = controllers;
+        this.lastQueued = new ControllerState[controllers.size()];
+        this.states = new ControllerState[CAPACITY][controllers.size()];
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(controllers.size());
+        for (int i = 0; i < controllers.size(); i++) {
+            lastQueued[i] = new ControllerState();
+            out.writeByte(controllers.get(i).getPort());
+        }
+        for (ControllerState[] slot : states) {
+            for (int i = 0; i < slot.length; i++) {
+                slot[i] = new ControllerState();
+            }
+        }
+
+        Thread writer = new Thread(this::writeLoop, "InputRecorder");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    /**
+     * Queues this loop's snapshots to be written; call once per loop after the controllers have updated
+     * @param timestamp the FPGA time in seconds
+     */
+    public void record(double timestamp) {
+        if (closed) return;
+        long sequence = writeSequence;
+        if (sequence - readSequence >= CAPACITY) {
+            // the next loop that fits stores every controller so replay doesn't depend on the dropped one
+            dropped++;
+            firstFrame = true;
+            return;
+        }
+        int slot = (int) (sequence & MASK);
+        int mask = 0;
+        for (int i = 0; i < controllers.size(); i++) {
+            ControllerState state = controllers.get(i).getState();
+            if (firstFrame || !state.sameAs(lastQueued[i])) {
+                mask |= 1 << i;
+                lastQueued[i].copyFrom(state);
+                states[slot][i].copyFrom(state);
+            }
+        }
+        firstFrame = false;
+        times[slot] = timestamp;
+        masks[slot] = mask;
+        writeSequence = sequence + 1;
+        frames++;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                // read before checking for new loops so nothing queued right before close is missed
+                boolean closing = closed;
+                long sequence = readSequence;
+                if (sequence == writeSequence) {
+                    if (closing) break;
+                    Thread.sleep(DRAIN_PERIOD_MS);
+                    continue;
+                }
+                write((int) (sequence & MASK));
+                readSequence = sequence + 1;
+            }
+        } catch (IOException e) {
+            closed = true;
+            DriverStation.reportError("Unable to record input, stopping the recording: " + e.getMessage(), false);
+        } catch (InterruptedException e) {
+            closed = true;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            DriverStation.reportError("Unable to finish the input recording: " + e.getMessage(), false);
+        }
+    }
+
+    private void write(int slot) throws IOException {
+        int mask = masks[slot];
+        out.writeDouble(times[slot]);
+        out.writeByte(mask);
+        for (int i = 0; i < controllers.size(); i++) {
+            if ((mask & (1 << i)) == 0) continue;
+            ControllerState state = states[slot][i];
+            out.writeInt(state.buttons);
+            for (int a = 0; a < ControllerState.AXES; a++) {
+                out.writeDouble(state.axes[a]);
+            }
+            for (int p = 0; p < ControllerState.POVS; p++) {
+                out.writeShort(state.povs[p]);
+            }
+        }
+    }
+
+    /**
+     * Stops recording; the background thread writes what's still queued and finishes the file
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * @return how many loops have been queued
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return how many loops were skipped because the writer was behind
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    public boolean isRecording() {
+        return !closed;
+    }
+}
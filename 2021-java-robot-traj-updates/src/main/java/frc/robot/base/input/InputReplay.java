@@ -0,0 +1,144 @@
+package frc.robot.base.input;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays back a file from InputRecorder in place of the driver station, one recorded loop per robot loop
+ * It goes by loops rather than time so a replay runs through the subsystems the same way every time
+ * Ports that weren't recorded, and every port once the recording ends, read as nothing pressed
+ */
+public class InputReplay implements InputSource {
+
+    private final int[] ports;
+    // [frame][controller], null where that controller didn't change
+    private final ControllerState[][] changes;
+    private final double[] timestamps;
+    private final ControllerState[] current;
+    private final ControllerState neutral = new ControllerState();
+    private int frame = -1;
+
+    /**
+     * Loads a whole recording into memory
+     */
+    public InputReplay(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != InputRecorder.MAGIC) {
+                throw new IOException(file + " isn't an input recording");
+            }
+            short version = in.readShort();
+            if (version != InputRecorder.VERSION) {
+                throw new IOException(file + " is version " + version + ", expected " + InputRecorder.VERSION);
+            }
+            int count = in.readUnsignedByte();
+            ports = new int[count];
+            current = new ControllerState[count];
+            for (int i = 0; i < count; i++) {
+                ports[i] = in.readUnsignedByte();
+                current[i] = new ControllerState();
+            }
+
+            List<ControllerState[]> frameList = new ArrayList<>();
+            List<Double> timeList = new ArrayList<>();
+            while (true) {
+                double timestamp;
+                try {
+                    timestamp = in.readDouble();
+                } catch (EOFException e) {
+                    break;
+                }
+                int mask = in.readUnsignedByte();
+                ControllerState[] frameChanges = new ControllerState[count];
+                for (int i = 0; i < count; i++) {
+                    if ((mask & (1 << i)) == 0) continue;
+                    ControllerState state = new ControllerState();
+                    state.buttons = in.readInt();
+                    for (int a = 0; a < ControllerState.AXES; a++) {
+                        state.axes[a] = in.readDouble();
+                    }
+                    for (int p = 0; p < ControllerState.POVS; p++) {
+                        state.povs[p] = in.readShort();
+                    }
+                    frameChanges[i] = state;
+                }
+                frameList.add(frameChanges);
+                timeList.add(timestamp);
+            }
+            changes = frameList.toArray(new ControllerState[0][]);
+            timestamps = new double[timeList.size()];
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = timeList.get(i);
+            }
+        }
+    }
+
+    /**
+     * Moves on to the next recorded loop; call once per loop before the controllers update
+     * @return whether there was another loop to play
+     */
+    public boolean advance() {
+        if (frame >= changes.length) return false;
+        frame++;
+        if (frame >= changes.length) {
+            for (ControllerState state : current) {
+                state.clear();
+            }
+            return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (changes[frame][i] != null) {
+                current[i].copyFrom(changes[frame][i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts again from the first recorded loop
+     */
+    public void restart() {
+        frame = -1;
+        for (ControllerState state : current) {
+            state.clear();
+        }
+    }
+
+    @Override
+    public void read(int port, ControllerState state) {
+        for (int i = 0; i < ports.length; i++) {
+            if (ports[i] == port) {
+                state.copyFrom(current[i]);
+                return;
+            }
+        }
+        state.copyFrom(neutral);
+    }
+
+    /**
+     * @return the loop being played, or -1 before the first
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    public int getFrameCount() {
+        return changes.length;
+    }
+
+    public boolean isFinished() {
+        return frame >= changes.length;
+    }
+
+    /**
+     * @return when the loop being played was recorded, in FPGA seconds
+     */
+    public double getRecordedTime() {
+        return frame >= 0 && frame < timestamps.length ? timestamps[frame] : 0;
+    }
+}
@@ -0,0 +1,25 @@
+package frc.robot.base.input;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Where controllers get their state from each loop, normally the driver station
+ */
+public interface InputSource {
+
+    InputSource DRIVER_STATION = (port, state) -> {
+        DriverStation ds = DriverStation.getInstance();
+        state.buttons = ds.getStickButtons(port);
+        for (int i = 0; i < ControllerState.AXES; i++) {
+            state.axes[i] = ds.getStickAxis(port, i);
+        }
+        for (int i = 0; i < ControllerState.POVS; i++) {
+            state.povs[i] = ds.getStickPOV(port, i);
+        }
+    };
+
+    /**
+     * Fills in the state of the controller on a port for this loop
+     */
+    void read(int port, ControllerState state);
+}
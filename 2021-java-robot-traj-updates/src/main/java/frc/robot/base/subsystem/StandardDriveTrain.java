@@ -2,6 +2,8 @@ package frc.robot.base.subsystem;
 
 import frc.robot.base.device.motor.EncoderMotor;
 import frc.robot.base.device.motor.EncoderMotorConfig;
+import frc.robot.base.device.motor.MotorSample;
+import frc.robot.base.util.MultiRateLimiter;
 
 import java.util.Map;
 import java.util.function.Supplier;
@@ -9,7 +11,7 @@ import java.util.function.Supplier;
 /**
  * A drive train with two encoder motors and a rate limiter for each motor that is controlled with a controller
  * It features two driving modes, closed loop and open loop in case something goes wrong
- * NOTE: rate limiters are currently disabled
+ * Only driver input (setDriveInput) is rate limited; paths and autos already plan their own acceleration
  */
 public class StandardDriveTrain extends Subsystem {
 
@@ -20,32 +22,68 @@ public class StandardDriveTrain extends Subsystem {
 
     private boolean useClosedLoop = true;
 
+    private static final int LEFT = 0;
+    private static final int RIGHT = 1;
+    /**
+     * driver input that hasn't been limited for this long in seconds restarts from the measured speed,
+     * since something else was driving in between
+     */
+    private static final double INPUT_IDLE_TIME = 0.1;
+    // limits the driver's input as a fraction of the absolute max speed so open and closed loop share it
+    private final MultiRateLimiter inputLimiter;
+
     public StandardDriveTrain(
             EncoderMotor leftMotor, EncoderMotor rightMotor,
             double maxAcceleration, double maxSpeed, double startMaxSpeed) {
+        this(leftMotor, rightMotor, maxAcceleration, maxAcceleration, maxSpeed, startMaxSpeed);
+    }
+
+    /**
+     * @param maxAcceleration how fast driver input can speed the wheels up in feet per second squared
+     * @param maxDeceleration how fast driver input can slow the wheels down in feet per second squared
+     */
+    public StandardDriveTrain(
+            EncoderMotor leftMotor, EncoderMotor rightMotor,
+            double maxAcceleration, double maxDeceleration, double maxSpeed, double startMaxSpeed) {
         super("driveTrain");
         this.leftMotor = leftMotor;
         this.rightMotor = rightMotor;
         this.currentMaxSpeed = startMaxSpeed;
         this.absoluteMaxSpeed = maxSpeed;
+        this.inputLimiter = new MultiRateLimiter(2, maxAcceleration / maxSpeed, maxDeceleration / maxSpeed);
     }
 
     private double leftDemand = 0;
     private double leftOutputRaw = 0;
+    private double leftFeedforward = 0;
 
     private double rightDemand = 0;
     private double rightOutputRaw = 0;
+    private double rightFeedforward = 0;
 
     public void setLeftVelocity(double velocity) {
+        setLeftVelocity(velocity, 0);
+    }
+
+    public void setRightVelocity(double velocity) {
+        setRightVelocity(velocity, 0);
+    }
+
+    /**
+     * @param feedforward output added on top of the closed loop (-1 to 1), ex. from DriveFeedforward
+     */
+    public void setLeftVelocity(double velocity, double feedforward) {
         velocity = safeVelocity(velocity);
         this.leftDemand = velocity;
-        this.leftOutputRaw = this.leftMotor.setVelocity(velocity);
+        this.leftFeedforward = feedforward;
+        this.leftOutputRaw = this.leftMotor.setVelocity(velocity, feedforward);
     }
 
-    public void setRightVelocity(double velocity) {
+    public void setRightVelocity(double velocity, double feedforward) {
         velocity = safeVelocity(velocity);
         this.rightDemand = velocity;
-        this.rightOutputRaw = this.rightMotor.setVelocity(velocity);
+        this.rightFeedforward = feedforward;
+        this.rightOutputRaw = this.rightMotor.setVelocity(velocity, feedforward);
     }
 
     public void setVelocity(double velocity) {
@@ -57,6 +95,7 @@ public class StandardDriveTrain extends Subsystem {
         percent = safePercent(percent);
         this.leftDemand = percent;
         this.leftOutputRaw = percent;
+        this.leftFeedforward = 0;
         this.leftMotor.setPercentOutput(percent);
     }
 
@@ -64,6 +103,7 @@ public class StandardDriveTrain extends Subsystem {
         percent = safePercent(percent);
         this.rightDemand = percent;
         this.rightOutputRaw = percent;
+        this.rightFeedforward = 0;
         this.rightMotor.setPercentOutput(percent);
     }
 
@@ -96,6 +136,27 @@ public class StandardDriveTrain extends Subsystem {
         }
     }
 
+    /**
+     * Drives from the driver's input, limited to the max acceleration and deceleration
+     * @param left the left side from -1 to 1, a fraction of the absolute max speed in closed loop
+     * @param right the right side from -1 to 1
+     */
+    public void setDriveInput(double left, double right) {
+        if (inputLimiter.getTimeSinceUpdate(LEFT) > INPUT_IDLE_TIME) {
+            inputLimiter.reset(LEFT, useClosedLoop ? getLeftVelocity() / absoluteMaxSpeed : leftDemand);
+            inputLimiter.reset(RIGHT, useClosedLoop ? getRightVelocity() / absoluteMaxSpeed : rightDemand);
+        }
+        left = inputLimiter.get(LEFT, safePercent(left));
+        right = inputLimiter.get(RIGHT, safePercent(right));
+        if (useClosedLoop) {
+            setLeftVelocity(left * absoluteMaxSpeed);
+            setRightVelocity(right * absoluteMaxSpeed);
+        } else {
+            setLeftPercentOutput(left);
+            setRightPercentOutput(right);
+        }
+    }
+
     public double safeVelocity(double velocity) {
         return Math.max(Math.min(velocity, currentMaxSpeed), -currentMaxSpeed);
     }
@@ -114,21 +175,34 @@ public class StandardDriveTrain extends Subsystem {
     private double sensorLeftVelocityRaw = 0.0d;
     private double sensorLeftOutputPct = 0.0d;
     private int sensorStdAcquireCalled = 0;
+    private final MotorSample leftSample = new MotorSample();
+    private final MotorSample rightSample = new MotorSample();
+    private int staleSamples = 0;
+
+    /**
+     * samples older than this in seconds are counted as stale (a few feedback frames late)
+     */
+    public static final double MAX_SAMPLE_AGE = 0.05;
 
 
     //JAS added common sensor acquire routine
     @Override
     public void acquire() {
         // --------read right drive motor
-        sensorRightDistanceFt = rightMotor.getDistance();
-        sensorRightVelocityFps = rightMotor.getVelocity();
-        sensorRightVelocityRaw = rightMotor.getVelocityRaw();
-        sensorRightOutputPct = rightMotor.getOutputPercent();
+        rightMotor.sample(rightSample);
+        sensorRightDistanceFt = rightSample.distance;
+        sensorRightVelocityFps = rightSample.velocity;
+        sensorRightVelocityRaw = rightSample.velocityRaw;
+        sensorRightOutputPct = rightSample.outputPercent;
         // --------read left drive motor
-        sensorLeftDistanceFt = leftMotor.getDistance();
-        sensorLeftVelocityFps = leftMotor.getVelocity();
-        sensorLeftVelocityRaw = leftMotor.getVelocityRaw();
-        sensorLeftOutputPct = leftMotor.getOutputPercent();
+        leftMotor.sample(leftSample);
+        sensorLeftDistanceFt = leftSample.distance;
+        sensorLeftVelocityFps = leftSample.velocity;
+        sensorLeftVelocityRaw = leftSample.velocityRaw;
+        sensorLeftOutputPct = leftSample.outputPercent;
+        if (isSampleStale()) {
+            staleSamples++;
+        }
         // --------debug to ensure this routine is called.
         sensorStdAcquireCalled = (sensorStdAcquireCalled+1) % 2048;
 
@@ -138,8 +212,23 @@ public class StandardDriveTrain extends Subsystem {
     @Override
     public void stop() {
         setPercentOutput(0);
-        this.leftMotor.resetDistance();
-        this.rightMotor.resetDistance();
+        inputLimiter.reset(0);
+        // resetting puts a frame on the bus, so only do it when there's something to reset
+        if (sensorLeftDistanceFt != 0) {
+            this.leftMotor.resetDistance();
+        }
+        if (sensorRightDistanceFt != 0) {
+            this.rightMotor.resetDistance();
+        }
+        if (sensorLeftDistanceFt != 0 || sensorRightDistanceFt != 0) {
+            onDistanceReset();
+        }
+    }
+
+    /**
+     * Called whenever the encoders are zeroed, so anything tracking changes in distance can start again from 0
+     */
+    protected void onDistanceReset() {
     }
 
     //JAS made changes to not talk with hardware.
@@ -150,6 +239,7 @@ public class StandardDriveTrain extends Subsystem {
                 Map.entry("left/distance", this::getLeftDistance), //leftMotor::getDistance),
                 Map.entry("left/demand", () -> leftDemand),
                 Map.entry("left/demandRaw", () -> leftOutputRaw),
+                Map.entry("left/feedforward", () -> leftFeedforward),
                 Map.entry("left/received/velocity", this::getLeftVelocityRaw), //leftMotor::getVelocityRaw),
                 Map.entry("left/received/outputPercent", this::getLeftOutputPct), //eftMotor::getOutputPercent),
 
@@ -157,10 +247,17 @@ public class StandardDriveTrain extends Subsystem {
                 Map.entry("right/distance", this::getRightDistance), //rightMotor::getDistance),
                 Map.entry("right/demand", () -> rightDemand),
                 Map.entry("right/demandRaw", () -> rightOutputRaw),
+                Map.entry("right/feedforward", () -> rightFeedforward),
                 Map.entry("right/received/velocity", this::getRightVelocityRaw), //rightMotor::getVelocityRaw),
                 Map.entry("right/received/outputPercent", this::getRightOutputPct), //rightMotor::getOutputPercent),
 
+                Map.entry("left/sampleAgeMs", () -> leftSample.age * 1000),
+                Map.entry("right/sampleAgeMs", () -> rightSample.age * 1000),
+                Map.entry("staleSamples", () -> staleSamples),
+
                 Map.entry("closedLoopControl", () -> useClosedLoop),
+                Map.entry("left/limitedInput", () -> inputLimiter.getLastValue(LEFT)),
+                Map.entry("right/limitedInput", () -> inputLimiter.getLastValue(RIGHT)),
 
                 Map.entry("acquireStdCalled", this::getStdAcquireCalled)
 
@@ -251,6 +348,35 @@ public class StandardDriveTrain extends Subsystem {
         return sensorRightVelocityRaw;
     }
     
+    /**
+     * @return the last reading of the left side; the same object is refilled every loop
+     */
+    public MotorSample getLeftSample() {
+        return leftSample;
+    }
+
+    public MotorSample getRightSample() {
+        return rightSample;
+    }
+
+    /**
+     * @return whether either side's last reading is too old to trust
+     */
+    public boolean isSampleStale() {
+        return leftSample.isStale(MAX_SAMPLE_AGE) || rightSample.isStale(MAX_SAMPLE_AGE);
+    }
+
+    /**
+     * @return the FPGA time in seconds the wheel readings were measured at, the older of the two sides
+     */
+    public double getSampleTimestamp() {
+        return Math.min(leftSample.timestamp, rightSample.timestamp);
+    }
+
+    public int getStaleSamples() {
+        return staleSamples;
+    }
+
     public double getAbsoluteMaxSpeed() {
         return this.absoluteMaxSpeed;
     }
@@ -267,9 +393,35 @@ public class StandardDriveTrain extends Subsystem {
         setRightMotorConfig(config);
     }
 
+    /**
+     * Loads configs onto both sides ahead of time so selectMotorConfigs can switch between them instantly
+     */
+    public void preloadMotorConfigs(EncoderMotorConfig... configs) {
+        this.leftMotor.preloadConfigs(configs);
+        this.rightMotor.preloadConfigs(configs);
+    }
+
+    public void selectMotorConfigs(EncoderMotorConfig config) {
+        this.leftMotor.selectConfig(config);
+        this.rightMotor.selectConfig(config);
+    }
+
+    public boolean isMotorConfigPending() {
+        return this.leftMotor.isConfigPending() || this.rightMotor.isConfigPending();
+    }
+
+    public EncoderMotor getLeftMotor() {
+        return this.leftMotor;
+    }
+
+    public EncoderMotor getRightMotor() {
+        return this.rightMotor;
+    }
+
     public void resetDistance() {
         this.leftMotor.resetDistance();
         this.rightMotor.resetDistance();
+        onDistanceReset();
     }
 
     //JAS added
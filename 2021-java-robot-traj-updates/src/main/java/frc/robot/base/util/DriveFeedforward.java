@@ -0,0 +1,64 @@
+package frc.robot.base.util;
+
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.controller.SimpleMotorFeedforward;
+import edu.wpi.first.wpilibj.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.util.Units;
+
+/**
+ * Works out the output each side of a drive train needs to follow a trajectory on top of its velocity loop
+ * The gains are in volts and feet like drive characterization gives them, the output is a percent for an
+ * arbitrary feedforward demand
+ */
+public class DriveFeedforward {
+
+    private final SimpleMotorFeedforward feedforward;
+    private final double halfTrackWidth;
+
+    /**
+     * @param kS volts to get moving
+     * @param kV volts per ft/s, leave this at 0 when the motors' F gain already covers velocity
+     * @param kA volts per ft/s^2
+     * @param trackWidth the distance between the left and right wheels in feet
+     */
+    public DriveFeedforward(double kS, double kV, double kA, double trackWidth) {
+        this.feedforward = new SimpleMotorFeedforward(kS, kV, kA);
+        this.halfTrackWidth = trackWidth / 2;
+    }
+
+    /**
+     * @param velocity the wheel velocity in ft/s
+     * @param acceleration the wheel acceleration in ft/s^2
+     * @return the feedforward as a percent of the battery voltage
+     */
+    public double calculate(double velocity, double acceleration) {
+        double battery = RobotController.getBatteryVoltage();
+        if (battery <= 0) {
+            return 0;
+        }
+        return Math.max(-1, Math.min(1, feedforward.calculate(velocity, acceleration) / battery));
+    }
+
+    /**
+     * @return the left wheels' acceleration along the path in ft/s^2
+     */
+    public double getLeftAcceleration(Trajectory.State state) {
+        return getAcceleration(state) * (1 - getCurvature(state) * halfTrackWidth);
+    }
+
+    /**
+     * @return the right wheels' acceleration along the path in ft/s^2
+     */
+    public double getRightAcceleration(Trajectory.State state) {
+        return getAcceleration(state) * (1 + getCurvature(state) * halfTrackWidth);
+    }
+
+    private static double getAcceleration(Trajectory.State state) {
+        return Units.metersToFeet(state.accelerationMetersPerSecondSq);
+    }
+
+    // rad per meter to rad per foot
+    private static double getCurvature(Trajectory.State state) {
+        return Units.feetToMeters(state.curvatureRadPerMeter);
+    }
+}
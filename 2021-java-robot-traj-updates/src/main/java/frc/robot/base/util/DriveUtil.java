@@ -5,19 +5,21 @@ import frc.robot.base.input.Controller;
 import frc.robot.base.subsystem.StandardDriveTrain;
 import edu.wpi.first.networktables.NetworkTableEntry;
 //import edu.wpi.first.hal.HAL;
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.controller.RamseteController;
 import edu.wpi.first.wpilibj.geometry.Pose2d;
 import edu.wpi.first.wpilibj.geometry.Rotation2d;
 import edu.wpi.first.wpilibj.geometry.Transform2d;
 import edu.wpi.first.wpilibj.kinematics.ChassisSpeeds;
 import edu.wpi.first.wpilibj.kinematics.DifferentialDriveKinematics;
-import edu.wpi.first.wpilibj.kinematics.DifferentialDriveOdometry;
 import edu.wpi.first.wpilibj.kinematics.DifferentialDriveWheelSpeeds;
 import edu.wpi.first.wpilibj.trajectory.Trajectory;
 import edu.wpi.first.wpilibj.util.Units;
 import frc.robot.base.Controls;
 import frc.robot.base.NTHandler;
+import frc.robot.base.device.motor.EncoderMotor;
+import frc.robot.base.device.motor.MotionProfileStream;
+import frc.robot.base.device.motor.PhoenixMotorPair;
+import frc.robot.hailfire.MotorConfig;
 import frc.robot.hailfire.subsystem.DriveTrain;
 
 public class DriveUtil {
@@ -40,13 +42,7 @@ public class DriveUtil {
         double left = fb - lr;
         double right = fb + lr;
 
-        if (driveTrain.isClosedLoop()) {
-            driveTrain.setLeftVelocity(left * driveTrain.getAbsoluteMaxSpeed());
-            driveTrain.setRightVelocity(right * driveTrain.getAbsoluteMaxSpeed());
-        } else {
-            driveTrain.setLeftPercentOutput(left);
-            driveTrain.setRightPercentOutput(right);
-        }
+        driveTrain.setDriveInput(left, right);
 
         if (controller.buttonPressed(Controls.DriveTrain.USE_CLOSED_LOOP)) {
             driveTrain.setClosedLoop(true);
@@ -63,7 +59,6 @@ public class DriveUtil {
 
     private static Trajectory trajectory = new Trajectory();
 
-    private static DifferentialDriveOdometry trajOdom;
     private static DifferentialDriveKinematics trajKine;
     private static RamseteController trajRamsete;
 
@@ -117,11 +112,12 @@ public class DriveUtil {
         //--------sample trajectory
         Trajectory.State currentState = trajectory.sample( sampTime );
 
-        //--------update odometry -- robot's position on the field.
-        Pose2d trajCurrentPosition = trajOdom.update(
-                Rotation2d.fromDegrees(angleDelta),
-                Units.feetToMeters(leftDist), 
-                Units.feetToMeters(rightDist));
+        //--------robot's position on the field from the fused wheel / gyro / IMU estimate.
+        PoseEstimator pose = trajDriveTrain.getPoseEstimator();
+        Pose2d trajCurrentPosition = new Pose2d(
+                Units.feetToMeters(pose.getX()),
+                Units.feetToMeters(pose.getY()),
+                Rotation2d.fromDegrees(pose.getHeadingDegrees()));
 
         //--------execute ramsete controller to calculate new robot speed demand.
         //trajRamsete.setEnabled(false);
@@ -131,9 +127,14 @@ public class DriveUtil {
         //--------normalize to ensure not going faster than possible.
         trajWheelDmds.normalize(Units.feetToMeters(maxSpeed));
 
-        //--------output speed demand to wheels.
-        trajDriveTrain.setLeftVelocity(Units.metersToFeet(trajWheelDmds.leftMetersPerSecond));
-        trajDriveTrain.setRightVelocity(Units.metersToFeet(trajWheelDmds.rightMetersPerSecond));
+        //--------output speed demand to wheels, with feedforward for the path's acceleration.
+        DriveFeedforward trajFeedforward = trajDriveTrain.getFeedforward();
+        double leftVelocity = Units.metersToFeet(trajWheelDmds.leftMetersPerSecond);
+        double rightVelocity = Units.metersToFeet(trajWheelDmds.rightMetersPerSecond);
+        trajDriveTrain.setLeftVelocity(leftVelocity,
+                trajFeedforward.calculate(leftVelocity, trajFeedforward.getLeftAcceleration(currentState)));
+        trajDriveTrain.setRightVelocity(rightVelocity,
+                trajFeedforward.calculate(rightVelocity, trajFeedforward.getRightAcceleration(currentState)));
 
         //--------calculate position error.
         Transform2d trajErrorPose = trajCurrentPosition.minus(currentState.poseMeters);
@@ -177,7 +178,102 @@ public class DriveUtil {
         return (trajOnTime && trajOnTarget) || trajOutTime;
     }
 
-    private static final double trackWidth = 24.d;
+    private static final double trackWidth = DriveTrain.TRACK_WIDTH; // feet
+
+    private static TrajectoryStreamer trajStreamer = null;
+    private static NetworkTableEntry nte_trajStreamed;
+    private static NetworkTableEntry nte_trajUnderrun;
+
+    //=============================================================================================================
+    // -------- Start a trajectory that the motor controllers run themselves from a streamed motion profile.
+    // the roboRIO only adds ramsete corrections; falls back to startTrajectory when the drive isn't phoenix motors
+    public static void startProfiledTrajectory(Trajectory t, DriveTrain myDriveTrain) {
+        startTrajectory(t, myDriveTrain);
+        stopProfiledTrajectory();
+
+        EncoderMotor left = myDriveTrain.getLeftMotor();
+        EncoderMotor right = myDriveTrain.getRightMotor();
+        if (left instanceof PhoenixMotorPair && right instanceof PhoenixMotorPair) {
+            trajStreamer = new TrajectoryStreamer(
+                t, trackWidth, myDriveTrain.getFeedforward(),
+                new MotionProfileStream(((PhoenixMotorPair) left).getParent()),
+                new MotionProfileStream(((PhoenixMotorPair) right).getParent()));
+            trajStreamer.start(MotorConfig.DriveTrain.LOW_PROFILE_CONFIG.PROFILE_SLOT);
+        }
+
+        nte_trajStreamed = NTHandler.getRobotEntry("traj/trajStreamed");
+        nte_trajUnderrun = NTHandler.getRobotEntry("traj/trajUnderrun");
+        nte_trajStreamed.setBoolean(trajStreamer != null);
+    }
+
+    //=============================================================================================================
+    // -------- follow a streamed path.  call every 20 ms until finishedProfiledPath.
+    public static void followProfiledPath() {
+        if (trajStreamer == null) {
+            followPath();
+            return;
+        }
+        trajStreamer.update();
+
+        //--------sample the path where the controllers are on it
+        Trajectory.State currentState = trajectory.sample(trajStreamer.getTime());
+        PoseEstimator pose = trajDriveTrain.getPoseEstimator();
+        Pose2d trajCurrentPosition = new Pose2d(
+                Units.feetToMeters(pose.getX()),
+                Units.feetToMeters(pose.getY()),
+                Rotation2d.fromDegrees(pose.getHeadingDegrees()));
+
+        //--------ramsete gives the speeds to get back on the path, the profile already has the path's own speeds
+        DifferentialDriveWheelSpeeds trajWheelDmds =
+                trajKine.toWheelSpeeds(trajRamsete.calculate(trajCurrentPosition, currentState));
+        DifferentialDriveWheelSpeeds trajWheelRefs = trajKine.toWheelSpeeds(new ChassisSpeeds(
+                currentState.velocityMetersPerSecond, 0,
+                currentState.velocityMetersPerSecond * currentState.curvatureRadPerMeter));
+        trajStreamer.setCorrection(
+                Units.metersToFeet(trajWheelDmds.leftMetersPerSecond - trajWheelRefs.leftMetersPerSecond),
+                Units.metersToFeet(trajWheelDmds.rightMetersPerSecond - trajWheelRefs.rightMetersPerSecond));
+
+        Transform2d trajErrorPose = trajCurrentPosition.minus(currentState.poseMeters);
+        trajXErrorFt = Units.metersToFeet(trajErrorPose.getX());
+        trajYErrorFt = Units.metersToFeet(trajErrorPose.getY());
+        trajGyroErrorDeg = trajErrorPose.getRotation().getDegrees();
+        trajOnTarget = trajRamsete.atReference();
+
+        nte_trajSampTime.setDouble(trajStreamer.getTime());
+        nte_trajOnTarget.setBoolean(trajOnTarget);
+        nte_trajXErrorFt.setDouble(trajXErrorFt);
+        nte_trajYErrorFt.setDouble(trajYErrorFt);
+        nte_trajGyroErrorDeg.setDouble(trajGyroErrorDeg);
+        nte_trajUnderrun.setBoolean(trajStreamer.hasUnderrun());
+    }
+
+    //=============================================================================================================
+    // -------- See if the streamed path is complete; stops streaming once it is.
+    public static boolean finishedProfiledPath() {
+        if (trajStreamer == null) {
+            return finishedPath();
+        }
+        double currentTimeSec = (double)( System.currentTimeMillis() - pathStartTime ) * 0.001d;
+        boolean trajOutTime = currentTimeSec >= (trajectory.getTotalTimeSeconds() + 10.d);
+        nte_trajTotalTime.setDouble(trajectory.getTotalTimeSeconds());
+        nte_trajCurrentTime.setDouble(trajStreamer.getTime());
+
+        if ((trajStreamer.isFinished() && trajOnTarget) || trajOutTime) {
+            stopProfiledTrajectory();
+            return true;
+        }
+        return false;
+    }
+
+    //=============================================================================================================
+    // -------- Stop streaming and go back to the normal gear gains.
+    public static void stopProfiledTrajectory() {
+        if (trajStreamer != null) {
+            trajStreamer.stop();
+            trajStreamer = null;
+            trajDriveTrain.selectMotorConfigs(trajDriveTrain.getGearConfig());
+        }
+    }
 
     //=============================================================================================================
     // -------- Initialize to start trajectory.
@@ -186,8 +282,7 @@ public class DriveUtil {
 
         trajDriveTrain = myDriveTrain;
 
-        trajOdom = new DifferentialDriveOdometry(Rotation2d.fromDegrees(0));
-        trajOdom.resetPosition(new Pose2d(), Rotation2d.fromDegrees(0) );
+        trajDriveTrain.getPoseEstimator().reset(0, 0, 0);
         trajKine = new DifferentialDriveKinematics(Units.feetToMeters(trackWidth));
         trajRamsete = new RamseteController();
 
@@ -222,12 +317,8 @@ public class DriveUtil {
 
 
         //JAS added debug
-        DriverStation.reportWarning(
-            "DriveUtil.startTrajectory called - "+
-            "gyro="+Double.toString(trajInitialGyro)+
-            ", left="+Double.toString(trajInitialLeft)+
-            ", right="+Double.toString(trajInitialRight)+
-            ", time="+Long.toString(pathStartTime), false );
+        Log.info("DriveUtil.startTrajectory called - gyro={}, left={}, right={}, time={}",
+            trajInitialGyro, trajInitialLeft, trajInitialRight, pathStartTime);
 
         //HAL.sendConsoleLine("DriveUtil.startTrajectory called - "+
         //    "gyro="+Double.toString(trajInitialGyro)+
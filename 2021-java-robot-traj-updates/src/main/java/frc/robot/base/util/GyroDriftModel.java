@@ -0,0 +1,177 @@
+package frc.robot.base.util;
+
+/**
+ * Models gyro bias (degrees per second) as a linear function of temperature and subtracts it from the integrated yaw
+ * The fit is done online with least squares from samples taken while the robot is sitting still,
+ * or the coefficients can be set directly from a fit of logged sessions
+ */
+public class GyroDriftModel {
+
+    /**
+     * rates above this (degrees per second) are treated as the robot being moved, not drift
+     */
+    private static final double MAX_DRIFT_RATE = 1;
+    /**
+     * how many stationary samples are needed before the fit is used
+     */
+    private static final int MIN_SAMPLES = 250;
+    /**
+     * how much the temperature has to vary before the slope is trusted; below this only the offset is used
+     */
+    private static final double MIN_TEMP_SPREAD = 2;
+    /**
+     * smoothing factor for the reported drift rates
+     */
+    private static final double DRIFT_FILTER = 0.01;
+
+    // running sums for bias = offset + slope * temperature
+    private int sampleCount = 0;
+    private double sumT = 0;
+    private double sumTT = 0;
+    private double sumB = 0;
+    private double sumTB = 0;
+    private double minTemp = Double.MAX_VALUE;
+    private double maxTemp = -Double.MAX_VALUE;
+
+    private double offset = 0;
+    private double slope = 0;
+    private boolean fitLocked = false;
+
+    private double correction = 0;
+    private double lastRawAngle = 0;
+    private long lastTime = 0;
+    private boolean hasLast = false;
+
+    private double rawDriftPerMin = 0;
+    private double compensatedDriftPerMin = 0;
+
+    /**
+     * Integrates the bias model and returns the compensated angle; call once per loop
+     * @param rawAngle the angle straight from the gyro in degrees
+     * @param temperature the current gyro temperature
+     * @param stationary whether the robot is known to be sitting still (ex. disabled and wheels not moving)
+     * @return the raw angle with the modeled drift removed
+     */
+    public double update(double rawAngle, double temperature, boolean stationary) {
+        long now = System.nanoTime();
+        if (hasLast) {
+            double dt = (now - lastTime) * 1e-9d;
+            if (dt > 0) {
+                double bias = getBias(temperature);
+                correction += bias * dt;
+
+                double rate = (rawAngle - lastRawAngle) / dt;
+                if (stationary && Math.abs(rate) < MAX_DRIFT_RATE) {
+                    addSample(temperature, rate);
+                    rawDriftPerMin += DRIFT_FILTER * (rate * 60 - rawDriftPerMin);
+                    compensatedDriftPerMin += DRIFT_FILTER * ((rate - bias) * 60 - compensatedDriftPerMin);
+                }
+            }
+        }
+        lastRawAngle = rawAngle;
+        lastTime = now;
+        hasLast = true;
+        return rawAngle - correction;
+    }
+
+    /**
+     * Adds a stationary measurement to the fit; can also be used to feed in logged data
+     * @param temperature the gyro temperature
+     * @param rate the measured rate while not moving in degrees per second
+     */
+    public void addSample(double temperature, double rate) {
+        if (fitLocked) return;
+        sampleCount++;
+        sumT += temperature;
+        sumTT += temperature * temperature;
+        sumB += rate;
+        sumTB += temperature * rate;
+        minTemp = Math.min(minTemp, temperature);
+        maxTemp = Math.max(maxTemp, temperature);
+
+        if (sampleCount < MIN_SAMPLES) return;
+
+        double meanT = sumT / sampleCount;
+        double meanB = sumB / sampleCount;
+        double varT = sumTT / sampleCount - meanT * meanT;
+        if (maxTemp - minTemp >= MIN_TEMP_SPREAD && varT > 0) {
+            slope = (sumTB / sampleCount - meanT * meanB) / varT;
+            offset = meanB - slope * meanT;
+        } else {
+            slope = 0;
+            offset = meanB;
+        }
+    }
+
+    /**
+     * Sets the model directly (ex. from a fit of logged sessions) and stops the online fit from changing it
+     * @param offset the bias at a temperature of 0 in degrees per second
+     * @param slope how much the bias changes per degree of temperature
+     */
+    public void setCoefficients(double offset, double slope) {
+        this.offset = offset;
+        this.slope = slope;
+        this.fitLocked = true;
+    }
+
+    /**
+     * Throws away the fit and lets it start learning again
+     */
+    public void resetFit() {
+        sampleCount = 0;
+        sumT = sumTT = sumB = sumTB = 0;
+        minTemp = Double.MAX_VALUE;
+        maxTemp = -Double.MAX_VALUE;
+        offset = 0;
+        slope = 0;
+        fitLocked = false;
+    }
+
+    /**
+     * Should be called whenever the gyro itself is reset so the old correction doesn't carry over
+     */
+    public void resetCorrection() {
+        correction = 0;
+        hasLast = false;
+    }
+
+    /**
+     * @return the modeled bias in degrees per second at the given temperature
+     */
+    public double getBias(double temperature) {
+        return offset + slope * temperature;
+    }
+
+    public double getOffset() {
+        return offset;
+    }
+
+    public double getSlope() {
+        return slope;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the total amount of drift that has been removed in degrees
+     */
+    public double getCorrection() {
+        return correction;
+    }
+
+    /**
+     * @return the drift measured while stationary before compensation in degrees per minute
+     */
+    public double getRawDriftPerMin() {
+        return rawDriftPerMin;
+    }
+
+    /**
+     * @return the drift measured while stationary after compensation in degrees per minute
+     */
+    public double getCompensatedDriftPerMin() {
+        return compensatedDriftPerMin;
+    }
+}
@@ -0,0 +1,261 @@
+package frc.robot.base.util;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A table of rows sorted by a key that gives values between rows by interpolating
+ * Lookups are a binary search over primitive arrays so they don't allocate; edits rebuild the arrays
+ * Files are csv with the key first and one column per value, lines starting with # are ignored
+ */
+public class InterpolatingTable {
+
+    public enum Interpolation {
+        LINEAR,
+        /**
+         * a smooth curve through every row that never overshoots between them
+         */
+        MONOTONE_CUBIC
+    }
+
+    private final int columns;
+    private Interpolation interpolation;
+
+    private double[] keys = new double[0];
+    // [column][row]
+    private double[][] values;
+    private double[][] tangents;
+
+    public InterpolatingTable(int columns, Interpolation interpolation) {
+        this.columns = columns;
+        this.interpolation = interpolation;
+        this.values = new double[columns][0];
+        this.tangents = new double[columns][0];
+    }
+
+    /**
+     * Looks up a value
+     * Keys outside the table give the value of the closest row
+     * @param key the key to look up
+     * @param column which value
+     * @return the interpolated value, or NaN if the table is empty
+     */
+    public double get(double key, int column) {
+        int n = keys.length;
+        if (n == 0) return Double.NaN;
+        double[] v = values[column];
+        if (key <= keys[0]) return v[0];
+        if (key >= keys[n - 1]) return v[n - 1];
+
+        int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) return v[i];
+        // the row below the key
+        i = -i - 2;
+        double h = keys[i + 1] - keys[i];
+        double t = (key - keys[i]) / h;
+        if (interpolation == Interpolation.LINEAR) {
+            return v[i] + (v[i + 1] - v[i]) * t;
+        }
+        // cubic hermite
+        double t2 = t * t;
+        double t3 = t2 * t;
+        double[] m = tangents[column];
+        return (2 * t3 - 3 * t2 + 1) * v[i]
+            + (t3 - 2 * t2 + t) * h * m[i]
+            + (-2 * t3 + 3 * t2) * v[i + 1]
+            + (t3 - t2) * h * m[i + 1];
+    }
+
+    /**
+     * Looks up every value at once
+     * @param out filled with one value per column
+     * @return whether there was anything in the table
+     */
+    public boolean get(double key, double[] out) {
+        if (keys.length == 0) return false;
+        for (int c = 0; c < columns; c++) {
+            out[c] = get(key, c);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a row, or replaces the row with the same key
+     */
+    public void put(double key, double... rowValues) {
+        if (rowValues.length != columns) {
+            throw new IllegalArgumentException("Expected " + columns + " values but got " + rowValues.length);
+        }
+        int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) {
+            for (int c = 0; c < columns; c++) {
+                values[c][i] = rowValues[c];
+            }
+        } else {
+            i = -i - 1;
+            keys = insert(keys, i, key);
+            for (int c = 0; c < columns; c++) {
+                values[c] = insert(values[c], i, rowValues[c]);
+            }
+        }
+        updateTangents();
+    }
+
+    /**
+     * @return whether there was a row with that key to remove
+     */
+    public boolean remove(double key) {
+        int i = Arrays.binarySearch(keys, key);
+        if (i < 0) return false;
+        keys = delete(keys, i);
+        for (int c = 0; c < columns; c++) {
+            values[c] = delete(values[c], i);
+        }
+        updateTangents();
+        return true;
+    }
+
+    public void clear() {
+        keys = new double[0];
+        values = new double[columns][0];
+        updateTangents();
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return a separate table with the same rows, ex. to hand to another thread
+     */
+    public InterpolatingTable copy() {
+        InterpolatingTable copy = new InterpolatingTable(columns, interpolation);
+        copy.keys = keys.clone();
+        for (int c = 0; c < columns; c++) {
+            copy.values[c] = values[c].clone();
+        }
+        copy.updateTangents();
+        return copy;
+    }
+
+    public void setInterpolation(Interpolation interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Replaces the table with the rows in a file
+     * @return whether the file could be read; the table is left alone if it couldn't
+     */
+    public boolean load(File file) {
+        List<double[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split(",");
+                if (parts.length != columns + 1) {
+                    DriverStation.reportWarning(file.getName() + " line " + lineNumber + " doesn't have "
+                        + (columns + 1) + " values, skipping it", false);
+                    continue;
+                }
+                double[] row = new double[columns + 1];
+                for (int c = 0; c <= columns; c++) {
+                    row[c] = Double.parseDouble(parts[c].trim());
+                }
+                rows.add(row);
+            }
+        } catch (IOException | NumberFormatException e) {
+            DriverStation.reportError("Unable to load table " + file + ": " + e.getMessage(), false);
+            return false;
+        }
+
+        clear();
+        for (double[] row : rows) {
+            put(row[0], Arrays.copyOfRange(row, 1, row.length));
+        }
+        return true;
+    }
+
+    /**
+     * Writes the table in the same format load reads
+     * @return whether the file could be written
+     */
+    public boolean save(File file, String header) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println("# " + header);
+            for (int i = 0; i < keys.length; i++) {
+                StringBuilder line = new StringBuilder().append(keys[i]);
+                for (int c = 0; c < columns; c++) {
+                    line.append(',').append(values[c][i]);
+                }
+                writer.println(line);
+            }
+            return true;
+        } catch (IOException e) {
+            DriverStation.reportError("Unable to save table " + file + ": " + e.getMessage(), false);
+            return false;
+        }
+    }
+
+    // Fritsch-Carlson tangents, which keep the curve from overshooting between rows
+    private void updateTangents() {
+        int n = keys.length;
+        tangents = new double[columns][n];
+        if (n < 2) return;
+        for (int c = 0; c < columns; c++) {
+            double[] v = values[c];
+            double[] m = tangents[c];
+            double[] slopes = new double[n - 1];
+            for (int i = 0; i < n - 1; i++) {
+                slopes[i] = (v[i + 1] - v[i]) / (keys[i + 1] - keys[i]);
+            }
+            m[0] = slopes[0];
+            m[n - 1] = slopes[n - 2];
+            for (int i = 1; i < n - 1; i++) {
+                m[i] = slopes[i - 1] * slopes[i] <= 0 ? 0 : (slopes[i - 1] + slopes[i]) / 2;
+            }
+            for (int i = 0; i < n - 1; i++) {
+                if (slopes[i] == 0) {
+                    m[i] = 0;
+                    m[i + 1] = 0;
+                    continue;
+                }
+                double a = m[i] / slopes[i];
+                double b = m[i + 1] / slopes[i];
+                double s = a * a + b * b;
+                if (s > 9) {
+                    double tau = 3 / Math.sqrt(s);
+                    m[i] = tau * a * slopes[i];
+                    m[i + 1] = tau * b * slopes[i];
+                }
+            }
+        }
+    }
+
+    private static double[] insert(double[] array, int index, double value) {
+        double[] result = new double[array.length + 1];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private static double[] delete(double[] array, int index) {
+        double[] result = new double[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+}
@@ -0,0 +1,339 @@
+package frc.robot.base.util;
+
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.base.NTHandler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Logging that's safe to call from the robot loop
+ * Callers only copy a constant message and a few numbers into a preallocated ring, and a background thread
+ * builds the strings and writes them to a file and the console, so a log call never waits on I/O
+ * Messages use {} for each value, ex. Log.info("left={} right={}", left, right); a text value fills the first {}
+ */
+public class Log {
+
+    public enum Level {
+        INFO,
+        WARNING,
+        ERROR
+    }
+
+    private static final int CAPACITY = 1024; // must be a power of 2
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_VALUES = 4;
+    /**
+     * how many lines can go to the console each second; the rest only go to the file
+     */
+    private static final int CONSOLE_LINES_PER_SECOND = 10;
+    private static final long DRAIN_PERIOD_MS = 20;
+
+    // one event per slot; a slot is ready for sequence s once published holds s + 1
+    private static final double[] times = new double[CAPACITY];
+    private static final Level[] levels = new Level[CAPACITY];
+    private static final String[] messages = new String[CAPACITY];
+    private static final String[] texts = new String[CAPACITY];
+    private static final double[] values = new double[CAPACITY * MAX_VALUES];
+    private static final int[] valueCounts = new int[CAPACITY];
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+
+    private static final AtomicLong writeSequence = new AtomicLong();
+    private static volatile long readSequence = 0;
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long suppressed = 0;
+    private static volatile long written = 0;
+
+    private static BufferedWriter file;
+
+    private static NetworkTableEntry nte_dropped;
+    private static NetworkTableEntry nte_suppressed;
+    private static NetworkTableEntry nte_pending;
+
+    static {
+        Thread drain = new Thread(Log::drainLoop, "Log");
+        drain.setDaemon(true);
+        drain.setPriority(Thread.MIN_PRIORITY);
+        drain.start();
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message, null, 0, 0, 0, 0, 0);
+    }
+
+    public static void info(String message, double a) {
+        log(Level.INFO, message, null, 1, a, 0, 0, 0);
+    }
+
+    public static void info(String message, double a, double b) {
+        log(Level.INFO, message, null, 2, a, b, 0, 0);
+    }
+
+    public static void info(String message, double a, double b, double c) {
+        log(Level.INFO, message, null, 3, a, b, c, 0);
+    }
+
+    public static void info(String message, double a, double b, double c, double d) {
+        log(Level.INFO, message, null, 4, a, b, c, d);
+    }
+
+    public static void info(String message, String text) {
+        log(Level.INFO, message, text, 0, 0, 0, 0, 0);
+    }
+
+    public static void info(String message, String text, double a) {
+        log(Level.INFO, message, text, 1, a, 0, 0, 0);
+    }
+
+    public static void warning(String message) {
+        log(Level.WARNING, message, null, 0, 0, 0, 0, 0);
+    }
+
+    public static void warning(String message, double a) {
+        log(Level.WARNING, message, null, 1, a, 0, 0, 0);
+    }
+
+    public static void warning(String message, double a, double b) {
+        log(Level.WARNING, message, null, 2, a, b, 0, 0);
+    }
+
+    public static void warning(String message, double a, double b, double c) {
+        log(Level.WARNING, message, null, 3, a, b, c, 0);
+    }
+
+    public static void warning(String message, double a, double b, double c, double d) {
+        log(Level.WARNING, message, null, 4, a, b, c, d);
+    }
+
+    public static void warning(String message, String text) {
+        log(Level.WARNING, message, text, 0, 0, 0, 0, 0);
+    }
+
+    public static void warning(String message, String text, double a) {
+        log(Level.WARNING, message, text, 1, a, 0, 0, 0);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message, null, 0, 0, 0, 0, 0);
+    }
+
+    public static void error(String message, double a) {
+        log(Level.ERROR, message, null, 1, a, 0, 0, 0);
+    }
+
+    public static void error(String message, double a, double b) {
+        log(Level.ERROR, message, null, 2, a, b, 0, 0);
+    }
+
+    public static void error(String message, double a, double b, double c) {
+        log(Level.ERROR, message, null, 3, a, b, c, 0);
+    }
+
+    public static void error(String message, double a, double b, double c, double d) {
+        log(Level.ERROR, message, null, 4, a, b, c, d);
+    }
+
+    public static void error(String message, String text) {
+        log(Level.ERROR, message, text, 0, 0, 0, 0, 0);
+    }
+
+    public static void error(String message, String text, double a) {
+        log(Level.ERROR, message, text, 1, a, 0, 0, 0);
+    }
+
+    /**
+     * Puts an event in the ring, or drops it if the ring is full
+     * @param count how many of the values are used
+     */
+    private static void log(Level level, String message, String text, int count,
+            double a, double b, double c, double d) {
+        long sequence;
+        do {
+            sequence = writeSequence.get();
+            if (sequence - readSequence >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!writeSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & MASK);
+        int first = slot * MAX_VALUES;
+        times[slot] = Timer.getFPGATimestamp();
+        levels[slot] = level;
+        messages[slot] = message;
+        texts[slot] = text;
+        values[first] = a;
+        values[first + 1] = b;
+        values[first + 2] = c;
+        values[first + 3] = d;
+        valueCounts[slot] = count;
+        published.set(slot, sequence + 1);
+    }
+
+    private static void drainLoop() {
+        openFile();
+        StringBuilder line = new StringBuilder(256);
+        long consoleSecond = 0;
+        int consoleLines = 0;
+        while (true) {
+            long sequence = readSequence;
+            int slot = (int) (sequence & MASK);
+            if (published.get(slot) != sequence + 1) {
+                flush();
+                try {
+                    Thread.sleep(DRAIN_PERIOD_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            line.setLength(0);
+            format(slot, line);
+            Level level = levels[slot];
+            // the slot can be reused as soon as it's formatted
+            readSequence = sequence + 1;
+
+            write(line);
+            long second = System.currentTimeMillis() / 1000;
+            if (second != consoleSecond) {
+                consoleSecond = second;
+                consoleLines = 0;
+            }
+            if (consoleLines < CONSOLE_LINES_PER_SECOND) {
+                consoleLines++;
+                toConsole(level, line.toString());
+            } else {
+                suppressed++;
+            }
+        }
+    }
+
+    private static void format(int slot, StringBuilder line) {
+        line.append('[');
+        appendNumber(line, Math.round(times[slot] * 1000) / 1000d);
+        line.append("] ").append(levels[slot]).append(": ");
+
+        String message = messages[slot];
+        String text = texts[slot];
+        int next = 0;
+        int count = valueCounts[slot];
+        int start = 0;
+        int placeholder;
+        while ((placeholder = message.indexOf("{}", start)) >= 0) {
+            line.append(message, start, placeholder);
+            if (text != null) {
+                line.append(text);
+                text = null;
+            } else if (next < count) {
+                appendNumber(line, values[slot * MAX_VALUES + next++]);
+            } else {
+                line.append("{}");
+            }
+            start = placeholder + 2;
+        }
+        line.append(message, start, message.length());
+        texts[slot] = null;
+    }
+
+    private static void appendNumber(StringBuilder line, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            line.append((long) value);
+        } else {
+            line.append(value);
+        }
+    }
+
+    private static void toConsole(Level level, String line) {
+        switch (level) {
+            case ERROR:
+                DriverStation.reportError(line, false);
+                break;
+            case WARNING:
+                DriverStation.reportWarning(line, false);
+                break;
+            default:
+                System.out.println(line);
+        }
+    }
+
+    private static void openFile() {
+        File directory = new File(RobotBase.isReal() ? "/home/lvuser/logs" : "logs");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            DriverStation.reportWarning("Unable to make " + directory + ", only logging to the console", false);
+            return;
+        }
+        File logFile = new File(directory, "robot-" + System.currentTimeMillis() + ".log");
+        try {
+            file = new BufferedWriter(new FileWriter(logFile));
+        } catch (IOException e) {
+            DriverStation.reportWarning("Unable to open " + logFile + ", only logging to the console", false);
+        }
+    }
+
+    private static void write(CharSequence line) {
+        if (file == null) return;
+        try {
+            file.append(line).append('\n');
+            written++;
+        } catch (IOException e) {
+            file = null;
+            DriverStation.reportWarning("Unable to write the log file, only logging to the console", false);
+        }
+    }
+
+    private static void flush() {
+        if (file == null) return;
+        try {
+            file.flush();
+        } catch (IOException e) {
+            file = null;
+        }
+    }
+
+    /**
+     * Publishes how the logger is keeping up; call once per loop
+     */
+    public static void publish() {
+        if (nte_dropped == null) {
+            nte_dropped = NTHandler.getRobotEntry("log/dropped");
+            nte_suppressed = NTHandler.getRobotEntry("log/consoleSuppressed");
+            nte_pending = NTHandler.getRobotEntry("log/pending");
+        }
+        nte_dropped.setDouble(dropped.get());
+        nte_suppressed.setDouble(suppressed);
+        nte_pending.setDouble(getPending());
+    }
+
+    /**
+     * @return events that didn't fit in the ring
+     */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return lines that only went to the file because the console was busy
+     */
+    public static long getSuppressed() {
+        return suppressed;
+    }
+
+    public static long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return events waiting to be written
+     */
+    public static long getPending() {
+        return writeSequence.get() - readSequence;
+    }
+}
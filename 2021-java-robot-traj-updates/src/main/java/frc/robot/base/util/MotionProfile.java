@@ -0,0 +1,208 @@
+package frc.robot.base.util;
+
+/**
+ * A move from rest to rest that keeps to a max velocity, acceleration and jerk
+ * With a jerk limit it's an S-curve (up to 7 constant jerk segments), without one it's a trapezoid (up to 3 segments)
+ * Everything is worked out in closed form when it's made, so sampling it is a handful of multiplies
+ */
+public class MotionProfile {
+
+    private static final int MAX_SEGMENTS = 7;
+
+    // the state at the start of each segment and the jerk during it
+    private final double[] startTimes = new double[MAX_SEGMENTS];
+    private final double[] startPositions = new double[MAX_SEGMENTS];
+    private final double[] startVelocities = new double[MAX_SEGMENTS];
+    private final double[] startAccelerations = new double[MAX_SEGMENTS];
+    private final double[] jerks = new double[MAX_SEGMENTS];
+    private final double[] durations = new double[MAX_SEGMENTS];
+    private int segments = 0;
+
+    private final double start;
+    private final double goal;
+    private final double direction;
+    private final double totalTime;
+    private final double peakVelocity;
+    private final long generationNanos;
+
+    // where the last sample was, so samples that move forward in time don't have to search
+    private int lastSegment = 0;
+    private double position;
+    private double velocity;
+    private double acceleration;
+
+    /**
+     * @param start where the move starts
+     * @param goal where the move ends
+     * @param maxVelocity the fastest it can go in units per second
+     * @param maxAcceleration in units per second squared
+     * @param maxJerk in units per second cubed, 0 or infinite for a trapezoid
+     */
+    public MotionProfile(double start, double goal, double maxVelocity, double maxAcceleration, double maxJerk) {
+        long genStart = System.nanoTime();
+        this.start = start;
+        this.goal = goal;
+        this.direction = goal >= start ? 1 : -1;
+        double distance = Math.abs(goal - start);
+        boolean trapezoid = !(maxJerk > 0) || Double.isInfinite(maxJerk);
+
+        // time spent ramping acceleration up (or down) once, 0 for a trapezoid
+        double jerkTime = trapezoid ? 0 : maxAcceleration / maxJerk;
+        // the velocity where the acceleration only just gets to its max before ramping back down
+        double fullAccelVelocity = maxAcceleration * jerkTime;
+
+        // the fastest it can get while still having room to stop: speeding up and slowing down take the same
+        // distance, v/2 * (v/a + a/j) each when the acceleration gets to its max or v * sqrt(v/j) when it doesn't
+        double peak = accelDistanceVelocity(distance / 2, maxAcceleration, jerkTime);
+        if (!trapezoid && peak < fullAccelVelocity) {
+            peak = Math.pow(distance / 2 * Math.sqrt(maxJerk), 2d / 3);
+        }
+        peak = Math.min(maxVelocity, peak);
+        this.peakVelocity = peak;
+
+        double rampTime;
+        double constantAccelTime;
+        double accel;
+        if (trapezoid) {
+            rampTime = 0;
+            accel = maxAcceleration;
+            constantAccelTime = peak / maxAcceleration;
+        } else if (peak >= fullAccelVelocity) {
+            rampTime = jerkTime;
+            accel = maxAcceleration;
+            constantAccelTime = peak / maxAcceleration - jerkTime;
+        } else {
+            rampTime = Math.sqrt(peak / maxJerk);
+            accel = maxJerk * rampTime;
+            constantAccelTime = 0;
+        }
+        double jerk = trapezoid ? 0 : maxJerk;
+        double accelDistance = peak * (2 * rampTime + constantAccelTime) / 2;
+        double cruiseTime = peak > 0 ? Math.max(0, distance - 2 * accelDistance) / peak : 0;
+
+        // speed up, cruise, slow down
+        if (trapezoid) {
+            addSegment(constantAccelTime, 0, accel);
+            addSegment(cruiseTime, 0, 0);
+            addSegment(constantAccelTime, 0, -accel);
+        } else {
+            addSegment(rampTime, jerk, 0);
+            addSegment(constantAccelTime, 0, accel);
+            addSegment(rampTime, -jerk, accel);
+            addSegment(cruiseTime, 0, 0);
+            addSegment(rampTime, -jerk, 0);
+            addSegment(constantAccelTime, 0, -accel);
+            addSegment(rampTime, jerk, -accel);
+        }
+        this.totalTime = endTime();
+        this.generationNanos = System.nanoTime() - genStart;
+    }
+
+    /**
+     * @return the velocity that takes the given distance to reach from rest with the acceleration and jerk time
+     */
+    private static double accelDistanceVelocity(double distance, double accel, double jerkTime) {
+        // v^2 / (2a) + v * jerkTime / 2 = distance
+        double a = 1 / (2 * accel);
+        double b = jerkTime / 2;
+        return (-b + Math.sqrt(b * b + 4 * a * distance)) / (2 * a);
+    }
+
+    // adds a segment that starts where the last one ended, skipping ones with no length
+    private void addSegment(double duration, double jerk, double startAcceleration) {
+        if (duration <= 0) return;
+        double t = 0, p = 0, v = 0;
+        if (segments > 0) {
+            int last = segments - 1;
+            double dt = durations[last];
+            t = startTimes[last] + dt;
+            p = positionAt(last, dt);
+            v = velocityAt(last, dt);
+        }
+        startTimes[segments] = t;
+        startPositions[segments] = p;
+        startVelocities[segments] = v;
+        startAccelerations[segments] = startAcceleration;
+        jerks[segments] = jerk;
+        durations[segments] = duration;
+        segments++;
+    }
+
+    private double endTime() {
+        return segments == 0 ? 0 : startTimes[segments - 1] + durations[segments - 1];
+    }
+
+    private double positionAt(int s, double dt) {
+        return startPositions[s] + startVelocities[s] * dt
+            + startAccelerations[s] * dt * dt / 2 + jerks[s] * dt * dt * dt / 6;
+    }
+
+    private double velocityAt(int s, double dt) {
+        return startVelocities[s] + startAccelerations[s] * dt + jerks[s] * dt * dt / 2;
+    }
+
+    /**
+     * Works out where the profile is at a time; read the result with getPosition, getVelocity and getAcceleration
+     * @param time seconds since the start of the move
+     */
+    public void sample(double time) {
+        if (segments == 0 || time >= totalTime) {
+            position = goal;
+            velocity = 0;
+            acceleration = 0;
+            return;
+        }
+        if (time <= 0) {
+            position = start;
+            velocity = 0;
+            acceleration = 0;
+            return;
+        }
+        int s = time < startTimes[lastSegment] ? 0 : lastSegment;
+        while (s < segments - 1 && time >= startTimes[s + 1]) {
+            s++;
+        }
+        lastSegment = s;
+        double dt = time - startTimes[s];
+        position = start + direction * positionAt(s, dt);
+        velocity = direction * velocityAt(s, dt);
+        acceleration = direction * (startAccelerations[s] + jerks[s] * dt);
+    }
+
+    public double getPosition() {
+        return position;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public double getAcceleration() {
+        return acceleration;
+    }
+
+    public double getGoal() {
+        return goal;
+    }
+
+    /**
+     * @return how long the whole move takes in seconds
+     */
+    public double getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return the fastest the move gets, which is less than the max velocity for short moves
+     */
+    public double getPeakVelocity() {
+        return peakVelocity;
+    }
+
+    /**
+     * @return how long it took to work out the profile in nanoseconds
+     */
+    public long getGenerationNanos() {
+        return generationNanos;
+    }
+}
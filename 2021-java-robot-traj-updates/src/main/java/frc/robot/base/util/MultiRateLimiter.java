@@ -0,0 +1,83 @@
+package frc.robot.base.util;
+
+import edu.wpi.first.wpilibj.Timer;
+
+import java.util.Arrays;
+
+/**
+ * A RateLimiter for several values at once (ex. each side of a drive train) that shares one set of limits
+ * Everything is kept in arrays so limiting doesn't allocate
+ */
+public class MultiRateLimiter {
+
+    private double acceleration;
+    private double deceleration;
+    private final double[] lastVals;
+    private final double[] lastTimes;
+
+    /**
+     * @param channels how many values it limits
+     * @param acceleration how fast each value can move away from 0 in units per second
+     * @param deceleration how fast each value can move towards 0 in units per second
+     */
+    public MultiRateLimiter(int channels, double acceleration, double deceleration) {
+        this.acceleration = acceleration;
+        this.deceleration = deceleration;
+        this.lastVals = new double[channels];
+        this.lastTimes = new double[channels];
+        Arrays.fill(lastTimes, Double.NaN);
+    }
+
+    /**
+     * Moves one channel towards a value using the time since that channel was last limited
+     */
+    public double get(int channel, double val) {
+        double now = Timer.getFPGATimestamp();
+        double last = lastTimes[channel];
+        double dt = Double.isNaN(last) ? 0 : Math.min(now - last, RateLimiter.MAX_DT);
+        lastTimes[channel] = now;
+        lastVals[channel] = RateLimiter.limit(lastVals[channel], val, acceleration, deceleration, dt);
+        return lastVals[channel];
+    }
+
+    /**
+     * Moves every channel towards its value in place
+     * @param vals one target per channel, replaced with the limited values
+     */
+    public void get(double[] vals) {
+        for (int c = 0; c < lastVals.length; c++) {
+            vals[c] = get(c, vals[c]);
+        }
+    }
+
+    /**
+     * Jumps a channel straight to a value and restarts its timing
+     */
+    public void reset(int channel, double val) {
+        lastVals[channel] = val;
+        lastTimes[channel] = Double.NaN;
+    }
+
+    public void reset(double val) {
+        for (int c = 0; c < lastVals.length; c++) {
+            reset(c, val);
+        }
+    }
+
+    /**
+     * @return seconds since the channel was last limited, infinite if it hasn't been since a reset
+     */
+    public double getTimeSinceUpdate(int channel) {
+        double last = lastTimes[channel];
+        return Double.isNaN(last) ? Double.POSITIVE_INFINITY : Timer.getFPGATimestamp() - last;
+    }
+
+    public double getLastValue(int channel) {
+        return lastVals[channel];
+    }
+
+    public void setMaxRate(double acceleration, double deceleration) {
+        this.acceleration = acceleration;
+        this.deceleration = deceleration;
+    }
+}
@@ -0,0 +1,111 @@
+package frc.robot.base.util;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.base.NTHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Brings devices up at the same time instead of one after the other to make booting faster
+ * Submit everything first, then join each task to get what it created
+ */
+public class ParallelInit {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "device-init");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Task<?>> tasks = new ArrayList<>();
+    private final long startTime = System.nanoTime();
+
+    /**
+     * A device that is being initialized
+     */
+    public static class Task<T> {
+        public final String name;
+        private final Future<T> future;
+        private volatile double durationMs = 0;
+        private volatile Throwable error = null;
+
+        private Task(String name, ExecutorService executor, Supplier<T> init) {
+            this.name = name;
+            this.future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return init.get();
+                } catch (RuntimeException | Error e) {
+                    error = e;
+                    throw e;
+                } finally {
+                    durationMs = (System.nanoTime() - start) * 1e-6d;
+                }
+            });
+        }
+
+        /**
+         * Waits for the device to finish initializing
+         * @return the initialized device
+         */
+        public T join() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while initializing " + name, e);
+            } catch (ExecutionException e) {
+                DriverStation.reportError("Failed to initialize " + name + ": " + e.getCause(), e.getCause().getStackTrace());
+                throw new IllegalStateException("Failed to initialize " + name, e.getCause());
+            }
+        }
+
+        public double getDurationMs() {
+            return durationMs;
+        }
+
+        public boolean failed() {
+            return error != null;
+        }
+    }
+
+    /**
+     * Starts initializing a device on another thread
+     * @param name the name used for timing and error reports
+     * @param init creates the device
+     */
+    public <T> Task<T> submit(String name, Supplier<T> init) {
+        Task<T> task = new Task<>(name, executor, init);
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Waits for everything, reports how long each device took and stops the init threads
+     */
+    public void finish() {
+        StringBuilder report = new StringBuilder("Device init");
+        for (Task<?> task : tasks) {
+            try {
+                task.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // already reported by join
+            }
+            NTHandler.getRobotEntry("init/" + task.name + "Ms").setDouble(task.getDurationMs());
+            report.append(" - ").append(task.name).append(task.failed() ? " FAILED " : " ")
+                .append(Math.round(task.getDurationMs())).append("ms");
+        }
+        double totalMs = (System.nanoTime() - startTime) * 1e-6d;
+        NTHandler.getRobotEntry("init/totalMs").setDouble(totalMs);
+        report.append(" - total ").append(Math.round(totalMs)).append("ms");
+        DriverStation.reportWarning(report.toString(), false);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,311 @@
+package frc.robot.base.util;
+
+/**
+ * An extended kalman filter that fuses differential wheel odometry, gyro heading and IMU acceleration into a pose
+ * Wheel odometry drives the prediction, the gyro corrects the heading and the accelerometer is used to catch wheel slip
+ * Everything is kept in primitive fields so calling update every loop never allocates
+ * Distances are in feet and angles are counter-clockwise positive
+ */
+public class PoseEstimator {
+
+    private final double trackWidth;
+
+    // noise models
+    /**
+     * wheel distance variance per foot travelled (ft^2 / ft)
+     */
+    private double wheelNoise = 0.01;
+    /**
+     * how much the wheel variance is multiplied by when the wheels are slipping
+     */
+    private double slipNoiseScale = 100;
+    /**
+     * gyro heading variance per update (rad^2)
+     */
+    private double gyroNoise = 1e-5;
+    /**
+     * a difference between wheel and IMU acceleration bigger than this (ft/s^2) is treated as wheel slip
+     */
+    private double slipAccel = 15;
+    /**
+     * gyro measurements further than this many standard deviations from the prediction are rejected
+     */
+    private double gyroGate = 4;
+    /**
+     * after this many rejected gyro measurements in a row the gyro is assumed to have been reset and is re-aligned
+     */
+    private static final int MAX_GYRO_REJECTS = 25;
+    /**
+     * how many samples in a row have to agree before going in or out of slip, so one noisy sample doesn't flip it
+     */
+    private static final int SLIP_SAMPLES = 3;
+    /**
+     * after the encoders are zeroed, readings closer to 0 than this in feet are taken as the new reference
+     */
+    private static final double WHEEL_RESET_TOLERANCE = 0.05;
+    /**
+     * the most samples to wait for the encoders to read close to 0 after they're zeroed
+     */
+    private static final int MAX_WHEEL_RESET_SAMPLES = 10;
+
+    // state
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+    private double velocity = 0;
+
+    // covariance, symmetric so only the upper triangle is stored
+    private double p00, p01, p02, p11, p12, p22;
+
+    // previous inputs
+    private double lastLeft = 0;
+    private double lastRight = 0;
+    // the velocity from the wheels alone, so the slip check isn't comparing against its own IMU integration
+    private double lastWheelVelocity = 0;
+    private double gyroOffset = 0;
+    private boolean initialized = false;
+    private boolean wheelsReset = false;
+    private int wheelResetSamples = 0;
+
+    // diagnostics
+    private boolean slipping = false;
+    private int slipStreak = 0;
+    private int slipCount = 0;
+    private int gyroRejectCount = 0;
+    private int gyroRejectsInARow = 0;
+    private double lastInnovation = 0;
+
+    /**
+     * @param trackWidth the distance between the left and right wheels in feet
+     */
+    public PoseEstimator(double trackWidth) {
+        this.trackWidth = trackWidth;
+    }
+
+    /**
+     * Sets the noise model for each sensor
+     * @param wheelNoise wheel distance variance per foot travelled
+     * @param gyroNoise gyro heading variance per update in radians squared
+     * @param slipAccel the wheel vs IMU acceleration difference in ft/s^2 that counts as slip
+     */
+    public void setNoise(double wheelNoise, double gyroNoise, double slipAccel) {
+        this.wheelNoise = wheelNoise;
+        this.gyroNoise = gyroNoise;
+        this.slipAccel = slipAccel;
+    }
+
+    /**
+     * Moves the estimate to a known pose; the next update re-reads the sensor references
+     * @param x the x position in feet
+     * @param y the y position in feet
+     * @param headingDegrees the heading in degrees
+     */
+    public void reset(double x, double y, double headingDegrees) {
+        this.x = x;
+        this.y = y;
+        this.heading = Math.toRadians(headingDegrees);
+        this.velocity = 0;
+        this.lastWheelVelocity = 0;
+        p00 = p01 = p02 = p11 = p12 = p22 = 0;
+        initialized = false;
+        wheelsReset = false;
+        slipping = false;
+        slipStreak = 0;
+        gyroRejectsInARow = 0;
+    }
+
+    /**
+     * Tells the estimator the encoders were zeroed, so the jump back to 0 isn't taken as the robot moving
+     * Until they read close to 0 the estimate coasts on the last velocity and follows the gyro for heading
+     */
+    public void resetWheels() {
+        wheelsReset = true;
+        wheelResetSamples = 0;
+    }
+
+    /**
+     * Runs one predict and correct step; call once per sensor update
+     * @param leftDistance the total distance of the left wheels in feet
+     * @param rightDistance the total distance of the right wheels in feet
+     * @param gyroDegrees the total gyro angle in degrees, counter-clockwise positive
+     * @param forwardAccel the IMU acceleration along the robot's forward axis in ft/s^2
+     * @param dt the time since the last update in seconds
+     */
+    public void update(double leftDistance, double rightDistance, double gyroDegrees, double forwardAccel, double dt) {
+        double gyroHeading = Math.toRadians(gyroDegrees);
+        if (!initialized || dt <= 0) {
+            lastLeft = leftDistance;
+            lastRight = rightDistance;
+            gyroOffset = heading - gyroHeading;
+            initialized = true;
+            return;
+        }
+
+        double dl = leftDistance - lastLeft;
+        double dr = rightDistance - lastRight;
+        lastLeft = leftDistance;
+        lastRight = rightDistance;
+
+        double ds;
+        double dTheta;
+        double wheelVar;
+        if (wheelsReset) {
+            // the encoders may still report the old distance for a sample or two after being zeroed
+            if (++wheelResetSamples >= MAX_WHEEL_RESET_SAMPLES
+                    || (Math.abs(leftDistance) < WHEEL_RESET_TOLERANCE && Math.abs(rightDistance) < WHEEL_RESET_TOLERANCE)) {
+                wheelsReset = false;
+            }
+            ds = velocity * dt;
+            dTheta = wrap(gyroHeading + gyroOffset - heading);
+            wheelVar = wheelNoise * slipNoiseScale * Math.abs(ds) + 1e-9;
+            lastWheelVelocity = velocity;
+        } else {
+            // --------slip check: the wheels say we accelerated much more (or less) than the IMU did
+            ds = (dl + dr) * 0.5;
+            double wheelVelocity = ds / dt;
+            double wheelAccel = (wheelVelocity - lastWheelVelocity) / dt;
+            lastWheelVelocity = wheelVelocity;
+            wheelVar = wheelNoise * (Math.abs(dl) + Math.abs(dr)) + 1e-9;
+            boolean disagrees = Math.abs(wheelAccel - forwardAccel) > slipAccel;
+            if (disagrees == slipping) {
+                slipStreak = 0;
+            } else if (++slipStreak >= SLIP_SAMPLES) {
+                slipping = disagrees;
+                slipStreak = 0;
+            }
+            if (slipping) {
+                slipCount++;
+                // trust the IMU for how far we went and the wheels much less for everything else
+                ds = (velocity + forwardAccel * dt) * dt;
+                wheelVar *= slipNoiseScale;
+            }
+            dTheta = (dr - dl) / trackWidth;
+        }
+        velocity = ds / dt;
+
+        // --------predict
+        double mid = heading + dTheta * 0.5;
+        double cos = Math.cos(mid);
+        double sin = Math.sin(mid);
+        x += ds * cos;
+        y += ds * sin;
+        heading += dTheta;
+
+        // F = [1 0 a; 0 1 b; 0 0 1]
+        double a = -ds * sin;
+        double b = ds * cos;
+        double n00 = p00 + 2 * a * p02 + a * a * p22;
+        double n01 = p01 + a * p12 + b * p02 + a * b * p22;
+        double n02 = p02 + a * p22;
+        double n11 = p11 + 2 * b * p12 + b * b * p22;
+        double n12 = p12 + b * p22;
+
+        // control noise mapped into the state through [cos -ds*sin/2; sin ds*cos/2; 0 1] on (ds, dTheta)
+        double varS = wheelVar * 0.5;
+        double varTheta = 2 * wheelVar / (trackWidth * trackWidth);
+        double ha = a * 0.5;
+        double hb = b * 0.5;
+        p00 = n00 + cos * cos * varS + ha * ha * varTheta;
+        p01 = n01 + cos * sin * varS + ha * hb * varTheta;
+        p02 = n02 + ha * varTheta;
+        p11 = n11 + sin * sin * varS + hb * hb * varTheta;
+        p12 = n12 + hb * varTheta;
+        p22 = p22 + varTheta;
+
+        // --------correct heading with the gyro
+        double innovation = wrap(gyroHeading + gyroOffset - heading);
+        double s = p22 + gyroNoise;
+        lastInnovation = innovation;
+        if (innovation * innovation > gyroGate * gyroGate * s) {
+            gyroRejectCount++;
+            if (++gyroRejectsInARow >= MAX_GYRO_REJECTS) {
+                // the wheels have drifted away from the gyro (ex. slip that got past the slip check), and the
+                // gyro is the one to believe for heading
+                heading += innovation;
+                p02 = p12 = 0;
+                p22 = gyroNoise;
+                gyroRejectsInARow = 0;
+            }
+            return;
+        }
+        gyroRejectsInARow = 0;
+
+        double k0 = p02 / s;
+        double k1 = p12 / s;
+        double k2 = p22 / s;
+        x += k0 * innovation;
+        y += k1 * innovation;
+        heading += k2 * innovation;
+
+        // P = P - K H P, where H P is the last row of P
+        double q02 = p02;
+        double q12 = p12;
+        double q22 = p22;
+        p00 -= k0 * q02;
+        p01 -= k0 * q12;
+        p02 -= k0 * q22;
+        p11 -= k1 * q12;
+        p12 -= k1 * q22;
+        p22 -= k2 * q22;
+    }
+
+    private static double wrap(double angle) {
+        return Math.IEEEremainder(angle, 2 * Math.PI);
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getHeadingDegrees() {
+        return Math.toDegrees(heading);
+    }
+
+    public double getHeadingRadians() {
+        return heading;
+    }
+
+    /**
+     * @return the fused forward velocity in feet per second
+     */
+    public double getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * @return the standard deviation of the heading estimate in degrees
+     */
+    public double getHeadingStdDev() {
+        return Math.toDegrees(Math.sqrt(Math.max(p22, 0)));
+    }
+
+    /**
+     * @return the standard deviation of the position estimate in feet
+     */
+    public double getPositionStdDev() {
+        return Math.sqrt(Math.max(p00 + p11, 0));
+    }
+
+    public boolean isSlipping() {
+        return slipping;
+    }
+
+    public int getSlipCount() {
+        return slipCount;
+    }
+
+    public int getGyroRejectCount() {
+        return gyroRejectCount;
+    }
+
+    /**
+     * @return the difference between the gyro and the predicted heading at the last update in degrees
+     */
+    public double getLastInnovation() {
+        return Math.toDegrees(lastInnovation);
+    }
+}
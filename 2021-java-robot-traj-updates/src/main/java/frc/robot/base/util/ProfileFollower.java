@@ -0,0 +1,140 @@
+package frc.robot.base.util;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Follows a motion profile with a velocity feedforward plus a proportional correction
+ * Once the profile has finished only the correction is left, which pulls it the rest of the way to the goal
+ * It only counts as finished after staying within tolerance for a few loops in a row, so passing through the goal
+ * on an overshoot doesn't stop it
+ */
+public class ProfileFollower {
+
+    private final double maxVelocity;
+    private final double maxAcceleration;
+    private final double maxJerk;
+    /**
+     * the output per unit per second of profile velocity
+     */
+    private final double kV;
+    /**
+     * the output per unit of position error
+     */
+    private final double kP;
+    /**
+     * how close to the goal counts as there
+     */
+    private final double tolerance;
+    private final double maxOutput;
+    /**
+     * how many calculates in a row after the profile ends have to be within tolerance to be finished
+     */
+    private static final int SETTLE_LOOPS = 5;
+
+    private MotionProfile profile;
+    private double startTime = 0;
+    private double error = 0;
+    private int settledLoops = 0;
+    private boolean finished = false;
+
+    /**
+     * @param maxVelocity the fastest the profile goes in units per second
+     * @param maxAcceleration in units per second squared
+     * @param maxJerk in units per second cubed, 0 for a trapezoid profile
+     * @param kV the output per unit per second of profile velocity
+     * @param kP the output per unit of position error
+     * @param tolerance how close to the goal counts as there
+     * @param maxOutput the largest output it gives in either direction
+     */
+    public ProfileFollower(
+            double maxVelocity, double maxAcceleration, double maxJerk,
+            double kV, double kP, double tolerance, double maxOutput) {
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.maxJerk = maxJerk;
+        this.kV = kV;
+        this.kP = kP;
+        this.tolerance = tolerance;
+        this.maxOutput = maxOutput;
+    }
+
+    /**
+     * Makes a new profile and starts following it
+     * @param position where it is now
+     * @param goal where it should end up
+     */
+    public void start(double position, double goal) {
+        profile = new MotionProfile(position, goal, maxVelocity, maxAcceleration, maxJerk);
+        startTime = Timer.getFPGATimestamp();
+        error = goal - position;
+        settledLoops = 0;
+        finished = false;
+    }
+
+    /**
+     * Starts a new profile only if the goal has moved, so it can be called every loop
+     */
+    public void setGoal(double position, double goal) {
+        if (profile == null || Math.abs(goal - profile.getGoal()) > tolerance) {
+            start(position, goal);
+        }
+    }
+
+    /**
+     * @param position where it is now
+     * @return the output to move along the profile, 0 when it hasn't been started
+     */
+    public double calculate(double position) {
+        if (profile == null) return 0;
+        profile.sample(Timer.getFPGATimestamp() - startTime);
+        error = profile.getPosition() - position;
+        double output = profile.getVelocity() * kV + error * kP;
+        boolean profileDone = getTime() >= profile.getTotalTime();
+        double goalError = profile.getGoal() - position;
+        if (profileDone && Math.abs(goalError) <= tolerance) {
+            settledLoops++;
+        } else {
+            settledLoops = 0;
+        }
+        // once settled it stays finished until it's pushed back out of tolerance
+        finished = settledLoops >= SETTLE_LOOPS;
+        if (finished) return 0;
+        return Math.max(-maxOutput, Math.min(maxOutput, output));
+    }
+
+    /**
+     * Forgets the profile; calculate gives 0 until it's started again
+     */
+    public void reset() {
+        profile = null;
+        settledLoops = 0;
+        finished = false;
+        error = 0;
+    }
+
+    /**
+     * @return how long it's been since the profile started in seconds
+     */
+    public double getTime() {
+        return profile == null ? 0 : Timer.getFPGATimestamp() - startTime;
+    }
+
+    /**
+     * @return how far it was from where the profile wanted it on the last calculate
+     */
+    public double getError() {
+        return error;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean isRunning() {
+        return profile != null && !finished;
+    }
+
+    public MotionProfile getProfile() {
+        return profile;
+    }
+}
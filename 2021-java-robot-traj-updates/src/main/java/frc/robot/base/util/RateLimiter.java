@@ -1,37 +1,102 @@
 package frc.robot.base.util;
 
+import edu.wpi.first.wpilibj.Timer;
+
 /**
- * prevents a value from changing too much
+ * prevents a value from changing too fast
+ * The rates are in units per second and use the time since the last call, so a slow loop doesn't slow the value down
+ * Speeding up (moving away from 0) and slowing down (moving towards 0) can have different limits
  */
 public class RateLimiter {
 
-    private double maxChange;
+    /**
+     * the longest gap between calls that counts; longer gaps (ex. after being disabled) are treated as this long
+     */
+    public static final double MAX_DT = 0.2;
+
+    private double acceleration;
+    private double deceleration;
     private double lastVal;
+    private double lastTime = Double.NaN;
 
-    public RateLimiter(double maxChange, double startVal) {
-        this.maxChange = maxChange;
+    /**
+     * @param acceleration how fast the value can move away from 0 in units per second
+     * @param deceleration how fast the value can move towards 0 in units per second
+     * @param startVal the value to start from
+     */
+    public RateLimiter(double acceleration, double deceleration, double startVal) {
+        this.acceleration = acceleration;
+        this.deceleration = deceleration;
         this.lastVal = startVal;
     }
 
-    public RateLimiter(double maxChange) {
-        this(maxChange, 0);
+    public RateLimiter(double maxRate, double startVal) {
+        this(maxRate, maxRate, startVal);
+    }
+
+    public RateLimiter(double maxRate) {
+        this(maxRate, 0);
     }
 
+    /**
+     * Moves towards a value using the time since the last call; the first call after a reset doesn't move
+     */
     public double get(double val) {
-        double output;
+        double now = Timer.getFPGATimestamp();
+        double dt = Double.isNaN(lastTime) ? 0 : Math.min(now - lastTime, MAX_DT);
+        lastTime = now;
+        return get(val, dt);
+    }
 
-        double diff = val - lastVal;
-        if(Math.abs(diff) > maxChange) {
-            output = lastVal + (diff > 0 ? maxChange : -maxChange);
-        } else {
-            output = val;
-        }
+    /**
+     * Moves towards a value
+     * @param dt seconds since the last call
+     */
+    public double get(double val, double dt) {
+        lastVal = limit(lastVal, val, acceleration, deceleration, dt);
+        return lastVal;
+    }
+
+    /**
+     * Jumps straight to a value and restarts the timing
+     */
+    public void reset(double val) {
+        lastVal = val;
+        lastTime = Double.NaN;
+    }
+
+    public double getLastValue() {
+        return lastVal;
+    }
+
+    public void setMaxRate(double maxRate) {
+        setMaxRate(maxRate, maxRate);
+    }
 
-        lastVal = output;
-        return output;
+    public void setMaxRate(double acceleration, double deceleration) {
+        this.acceleration = acceleration;
+        this.deceleration = deceleration;
     }
 
-    public void setMaxChange(double maxChange) {
-        this.maxChange = maxChange;
+    /**
+     * @return where a value at last can get towards target in dt seconds
+     */
+    static double limit(double last, double target, double acceleration, double deceleration, double dt) {
+        if (target == last || dt <= 0) {
+            return dt <= 0 ? last : target;
+        }
+        boolean towardsZero = last > 0 ? target < last : last < 0 && target > last;
+        if (!towardsZero) {
+            double maxChange = acceleration * dt;
+            return Math.abs(target - last) <= maxChange ? target : last + Math.copySign(maxChange, target - last);
+        }
+        double maxChange = deceleration * dt;
+        // still on the same side of 0 at the end of the step
+        if (target * last >= 0 || Math.abs(last) > maxChange) {
+            return Math.abs(target - last) <= maxChange ? target : last + Math.copySign(maxChange, target - last);
+        }
+        // slows to 0 partway through the step and speeds up the other way for the rest of it
+        double remaining = dt - Math.abs(last) / deceleration;
+        return Math.copySign(Math.min(Math.abs(target), acceleration * remaining), target);
     }
 }
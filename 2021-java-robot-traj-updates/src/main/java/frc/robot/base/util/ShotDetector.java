@@ -0,0 +1,176 @@
+package frc.robot.base.util;
+
+/**
+ * Detects balls leaving a flywheel shooter from the dip they cause in the wheel's velocity
+ * Works on the measured velocity as a fraction of the demand, so 1 is exactly at speed
+ */
+public class ShotDetector {
+
+    /**
+     * how far below the demand the wheel has to drop to count as a shot
+     */
+    private final double dipThreshold;
+    /**
+     * how close to the demand the wheel has to get back to count as recovered
+     */
+    private final double recoveredBand;
+
+    private static final int RATE_WINDOW = 8;
+    private final double[] shotTimes = new double[RATE_WINDOW];
+    private int burstShots = 0;
+    private int shotCount = 0;
+
+    private boolean armed = false;
+    private boolean inDip = false;
+    private double dipStart = 0;
+    // the bottom of the dip and how far it has come back up since, to spot a second ball hitting mid recovery
+    private double dipLow = 1;
+    private double dipHigh = 0;
+    private int earlyShots = 0;
+    private boolean lastShotEarly = false;
+    private double lastRecoveredTime = 0;
+
+    private double lastRecoveryTime = 0;
+    private double totalRecoveryTime = 0;
+    private int recoveries = 0;
+    private double lastIdleTime = 0;
+
+    /**
+     * @param dipThreshold how far the wheel has to drop to count as a shot, ex. 0.05 for 5% below the demand
+     * @param recoveredBand how close it has to get back to count as recovered, ex. 0.02 for within 2%
+     */
+    public ShotDetector(double dipThreshold, double recoveredBand) {
+        this.dipThreshold = dipThreshold;
+        this.recoveredBand = recoveredBand;
+    }
+
+    /**
+     * Checks the latest velocity; call once per loop while the wheel is spinning
+     * @param ratio the measured velocity divided by the demand
+     * @param time the current time in seconds
+     * @return whether a shot started this loop
+     */
+    public boolean update(double ratio, double time) {
+        boolean recovered = ratio >= 1 - recoveredBand;
+        if (!armed) {
+            // nothing counts until the wheel has reached speed once
+            if (recovered) {
+                armed = true;
+                lastRecoveredTime = time;
+            }
+            return false;
+        }
+        if (!inDip) {
+            if (ratio < 1 - dipThreshold) {
+                inDip = true;
+                dipStart = time;
+                dipLow = ratio;
+                dipHigh = ratio;
+                lastIdleTime = time - lastRecoveredTime;
+                recordShot(time, false);
+                return true;
+            }
+        } else if (!recovered) {
+            if (ratio <= dipLow) {
+                dipLow = ratio;
+                dipHigh = ratio;
+            } else {
+                dipHigh = Math.max(dipHigh, ratio);
+            }
+            // it was coming back up and dropped again, so another ball went through before it recovered
+            if (dipHigh - dipLow > dipThreshold / 2 && dipHigh - ratio > dipThreshold) {
+                dipLow = ratio;
+                dipHigh = ratio;
+                lastIdleTime = 0;
+                recordShot(time, true);
+                return true;
+            }
+        } else {
+            inDip = false;
+            lastRecoveredTime = time;
+            lastRecoveryTime = time - dipStart;
+            totalRecoveryTime += lastRecoveryTime;
+            recoveries++;
+        }
+        return false;
+    }
+
+    private void recordShot(double time, boolean early) {
+        shotTimes[burstShots % RATE_WINDOW] = time;
+        burstShots++;
+        shotCount++;
+        lastShotEarly = early;
+        if (early) {
+            earlyShots++;
+        }
+    }
+
+    /**
+     * Starts a new burst; call when the wheel stops or its demand changes
+     */
+    public void reset() {
+        armed = false;
+        inDip = false;
+        burstShots = 0;
+    }
+
+    /**
+     * @return whether the wheel is still getting back up to speed, either from spinning up or from the last shot
+     */
+    public boolean isRecovering() {
+        return !armed || inDip;
+    }
+
+    /**
+     * @return the shots taken in the current burst
+     */
+    public int getBurstShots() {
+        return burstShots;
+    }
+
+    public int getShotCount() {
+        return shotCount;
+    }
+
+    /**
+     * @return how many shots were taken before the wheel had recovered from the one before, which tend to fall short
+     */
+    public int getEarlyShots() {
+        return earlyShots;
+    }
+
+    public boolean wasLastShotEarly() {
+        return lastShotEarly;
+    }
+
+    /**
+     * @return the fire rate over the last few shots of the current burst in balls per second
+     */
+    public double getShotsPerSecond() {
+        int n = Math.min(burstShots, RATE_WINDOW);
+        if (n < 2) {
+            return 0;
+        }
+        double newest = shotTimes[(burstShots - 1) % RATE_WINDOW];
+        double oldest = shotTimes[(burstShots - n) % RATE_WINDOW];
+        return newest > oldest ? (n - 1) / (newest - oldest) : 0;
+    }
+
+    /**
+     * @return how long the wheel took to get back to speed after the last shot in seconds
+     */
+    public double getLastRecoveryTime() {
+        return lastRecoveryTime;
+    }
+
+    public double getAverageRecoveryTime() {
+        return recoveries == 0 ? 0 : totalRecoveryTime / recoveries;
+    }
+
+    /**
+     * @return how long the wheel sat at speed before the last shot in seconds
+     */
+    public double getLastIdleTime() {
+        return lastIdleTime;
+    }
+}
@@ -0,0 +1,211 @@
+package frc.robot.base.util;
+
+/**
+ * Keeps track of where a target is between camera frames by fusing vision with the gyro
+ * The target's field heading (gyro heading + vision yaw) hardly changes as the robot turns, so it's tracked with an
+ * alpha-beta filter and the bearing from the robot is worked out every loop from the latest gyro heading
+ * Each frame is matched against the gyro heading from when it was captured, not when it arrived, and frames too
+ * far from the prediction are thrown out
+ * Everything is in degrees with the gyro's direction positive
+ */
+public class TargetTracker {
+
+    private static final int HISTORY = 64;
+    /**
+     * the shortest time between frames used for the rate update, so two frames close together don't blow it up
+     */
+    private static final double MIN_FRAME_DT = 0.02;
+    /**
+     * how much each innovation counts towards the innovation statistics
+     */
+    private static final double STATS_SMOOTHING = 0.1;
+
+    private final double alpha;
+    private final double beta;
+    private final double gate;
+    private final int resetAfterRejects;
+    private final double timeout;
+
+    // gyro headings from the last few loops, so frames can be matched to where the robot was pointing when captured
+    private final double[] historyTimes = new double[HISTORY];
+    private final double[] historyHeadings = new double[HISTORY];
+    private int historyCount = 0;
+    private double heading = 0;
+    private double time = 0;
+
+    private boolean hasTarget = false;
+    private double targetHeading = 0;
+    private double targetRate = 0;
+    private double lastCaptureTime = 0;
+    private int consecutiveRejects = 0;
+
+    private long accepted = 0;
+    private long rejected = 0;
+    private double lastInnovation = 0;
+    private double innovationMean = 0;
+    private double innovationMeanSquare = 0;
+
+    /**
+     * @param alpha how much of each frame's error goes into the target heading (0 to 1)
+     * @param beta how much of each frame's error goes into the target heading's rate of change
+     * @param gate frames further than this many degrees from the prediction are thrown out
+     * @param resetAfterRejects after this many frames in a row are thrown out the target is assumed to have moved
+     * @param timeout seconds without an accepted frame before the target counts as lost
+     */
+    public TargetTracker(double alpha, double beta, double gate, int resetAfterRejects, double timeout) {
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gate = gate;
+        this.resetAfterRejects = resetAfterRejects;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Moves the prediction forward with the gyro; call every loop
+     * The target's rate is only followed up to timeout after the last accepted frame, so the prediction doesn't
+     * keep drifting once the frames stop
+     * @param heading the gyro heading in degrees
+     * @param time the time the heading was read in FPGA seconds
+     */
+    public void updateHeading(double heading, double time) {
+        if (historyCount > 0 && hasTarget) {
+            double until = Math.min(time, lastCaptureTime + timeout);
+            if (until > this.time) {
+                targetHeading += targetRate * (until - this.time);
+            }
+        }
+        int slot = historyCount % HISTORY;
+        historyTimes[slot] = time;
+        historyHeadings[slot] = heading;
+        historyCount++;
+        this.heading = heading;
+        this.time = time;
+    }
+
+    /**
+     * Adds a camera frame that saw the target
+     * @param yaw how far the target was from straight ahead in degrees
+     * @param captureTime when the frame was taken in FPGA seconds
+     * @return whether the frame was used, rather than thrown out as an outlier
+     */
+    public boolean addMeasurement(double yaw, double captureTime) {
+        if (historyCount == 0) return false;
+        double measured = headingAt(captureTime) + yaw;
+        if (!isTracking()) {
+            // the old prediction has stopped being followed, so it isn't worth gating against
+            restart(measured, captureTime);
+            return true;
+        }
+
+        // where the target was predicted to be when the frame was taken
+        double predicted = targetHeading - targetRate * (time - captureTime);
+        double innovation = measured - predicted;
+        lastInnovation = innovation;
+        if (Math.abs(innovation) > gate) {
+            rejected++;
+            consecutiveRejects++;
+            if (consecutiveRejects >= resetAfterRejects) {
+                // it keeps seeing something else, so that's probably the target now
+                restart(measured, captureTime);
+            }
+            return false;
+        }
+
+        double frameDt = Math.max(captureTime - lastCaptureTime, MIN_FRAME_DT);
+        targetHeading += alpha * innovation;
+        targetRate += beta * innovation / frameDt;
+        lastCaptureTime = captureTime;
+        consecutiveRejects = 0;
+        accepted++;
+        innovationMean += (innovation - innovationMean) * STATS_SMOOTHING;
+        innovationMeanSquare += (innovation * innovation - innovationMeanSquare) * STATS_SMOOTHING;
+        return true;
+    }
+
+    private void restart(double measured, double captureTime) {
+        hasTarget = true;
+        targetHeading = measured;
+        targetRate = 0;
+        lastCaptureTime = captureTime;
+        consecutiveRejects = 0;
+        accepted++;
+    }
+
+    /**
+     * @return the gyro heading at a time, interpolated from the history and held at its ends
+     */
+    private double headingAt(double t) {
+        int newest = (historyCount - 1) % HISTORY;
+        if (t >= historyTimes[newest]) return historyHeadings[newest];
+        int available = Math.min(historyCount, HISTORY);
+        for (int i = 1; i < available; i++) {
+            int older = (historyCount - 1 - i) % HISTORY;
+            int newer = (historyCount - i) % HISTORY;
+            if (t >= historyTimes[older]) {
+                double span = historyTimes[newer] - historyTimes[older];
+                double f = span > 0 ? (t - historyTimes[older]) / span : 0;
+                return historyHeadings[older] + (historyHeadings[newer] - historyHeadings[older]) * f;
+            }
+        }
+        return historyHeadings[(historyCount - available) % HISTORY];
+    }
+
+    /**
+     * Forgets the target
+     */
+    public void reset() {
+        hasTarget = false;
+        targetRate = 0;
+        consecutiveRejects = 0;
+    }
+
+    /**
+     * @return whether a frame has been accepted recently enough to trust the prediction
+     */
+    public boolean isTracking() {
+        return hasTarget && time - lastCaptureTime <= timeout;
+    }
+
+    /**
+     * @return the predicted field heading of the target in degrees
+     */
+    public double getTargetHeading() {
+        return targetHeading;
+    }
+
+    /**
+     * @return how far the target is from straight ahead right now in degrees
+     */
+    public double getBearing() {
+        return targetHeading - heading;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return how far the last frame was from the prediction in degrees
+     */
+    public double getLastInnovation() {
+        return lastInnovation;
+    }
+
+    /**
+     * @return the smoothed innovation of accepted frames; far from 0 means the prediction is biased
+     */
+    public double getInnovationMean() {
+        return innovationMean;
+    }
+
+    /**
+     * @return the smoothed root mean square innovation of accepted frames
+     */
+    public double getInnovationRms() {
+        return Math.sqrt(innovationMeanSquare);
+    }
+}
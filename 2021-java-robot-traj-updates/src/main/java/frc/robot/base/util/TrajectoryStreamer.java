@@ -0,0 +1,173 @@
+package frc.robot.base.util;
+
+import com.ctre.phoenix.motion.SetValueMotionProfile;
+
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.util.Units;
+import frc.robot.base.device.motor.MotionProfileStream;
+
+/**
+ * Turns a trajectory into a motion profile for each side of the drive train and streams it to the motor controllers
+ * The points are generated a little ahead of where the controllers are so heading corrections from the main loop
+ * can still be folded into them
+ */
+public class TrajectoryStreamer {
+
+    public static final int POINT_MS = 10;
+    private static final double POINT_SECONDS = POINT_MS * 0.001d;
+    /**
+     * how many points are kept waiting ahead of the one running; this is how late a correction gets applied
+     */
+    private static final int LEAD_POINTS = 10;
+    /**
+     * how many points have to be on the controllers before the profile starts so it doesn't run out right away
+     */
+    private static final int START_POINTS = 5;
+
+    private final Trajectory trajectory;
+    private final double halfTrackWidth;
+    private final DriveFeedforward feedforward;
+    private final MotionProfileStream left;
+    private final MotionProfileStream right;
+    private final Notifier notifier = new Notifier(this::stream);
+
+    // only touched on the streaming thread
+    private double pointTime = 0;
+    private double leftDistance = 0;
+    private double rightDistance = 0;
+
+    private volatile boolean allPushed = false;
+    private volatile double leftCorrection = 0;
+    private volatile double rightCorrection = 0;
+    private boolean running = false;
+    private double startTime = 0;
+
+    /**
+     * @param trajectory the path to follow
+     * @param trackWidth the distance between the left and right wheels in feet
+     * @param feedforward adds the output for each point's acceleration on top of the motors' F gain
+     * @param left the left side's stream
+     * @param right the right side's stream
+     */
+    public TrajectoryStreamer(
+            Trajectory trajectory, double trackWidth, DriveFeedforward feedforward,
+            MotionProfileStream left, MotionProfileStream right) {
+        this.trajectory = trajectory;
+        this.halfTrackWidth = trackWidth / 2;
+        this.feedforward = feedforward;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Starts filling the buffers; the profile itself starts from update once enough points are loaded
+     * @param slot the gain slot the motors follow the profile with
+     */
+    public void start(int slot) {
+        left.begin(slot, POINT_MS);
+        right.begin(slot, POINT_MS);
+        // only enough to start with, the rest is generated as it's needed so corrections still make it in
+        fill(START_POINTS);
+        // processing twice per point keeps the controllers' buffers topped up
+        notifier.startPeriodic(POINT_SECONDS / 2);
+    }
+
+    private void stream() {
+        fill(LEAD_POINTS);
+    }
+
+    /**
+     * Pushes points until the buffers are the given number of points ahead and moves them down to the controllers
+     */
+    private void fill(int leadPoints) {
+        while (!allPushed
+                && Math.min(left.getBufferedPoints(), right.getBufferedPoints()) < leadPoints
+                && left.canPush() && right.canPush()) {
+            pushNext();
+        }
+        left.process();
+        right.process();
+    }
+
+    private void pushNext() {
+        Trajectory.State state = trajectory.sample(pointTime);
+        double velocity = Units.metersToFeet(state.velocityMetersPerSecond);
+        // rad per meter to rad per foot
+        double curvature = Units.feetToMeters(state.curvatureRadPerMeter);
+        double leftVelocity = velocity * (1 - curvature * halfTrackWidth) + leftCorrection;
+        double rightVelocity = velocity * (1 + curvature * halfTrackWidth) + rightCorrection;
+        leftDistance += leftVelocity * POINT_SECONDS;
+        rightDistance += rightVelocity * POINT_SECONDS;
+
+        boolean last = pointTime >= trajectory.getTotalTimeSeconds();
+        left.push(leftDistance, leftVelocity,
+            feedforward.calculate(leftVelocity, feedforward.getLeftAcceleration(state)), last);
+        right.push(rightDistance, rightVelocity,
+            feedforward.calculate(rightVelocity, feedforward.getRightAcceleration(state)), last);
+        pointTime += POINT_SECONDS;
+        allPushed = last;
+    }
+
+    /**
+     * Starts, holds or stops the profile depending on how far along it is; call every loop from the main thread
+     */
+    public void update() {
+        if (!running && (allPushed
+                || Math.min(left.getBufferedPoints(), right.getBufferedPoints()) >= START_POINTS)) {
+            running = true;
+            startTime = Timer.getFPGATimestamp();
+            left.setOutput(SetValueMotionProfile.Enable);
+            right.setOutput(SetValueMotionProfile.Enable);
+        }
+        if (isFinished()) {
+            // stay on the last point instead of letting go
+            left.setOutput(SetValueMotionProfile.Hold);
+            right.setOutput(SetValueMotionProfile.Hold);
+        }
+        left.updateOutput();
+        right.updateOutput();
+    }
+
+    /**
+     * Sets how much faster each side should go than the path says to get back on it
+     * @param left the left correction in feet per second
+     * @param right the right correction in feet per second
+     */
+    public void setCorrection(double left, double right) {
+        this.leftCorrection = left;
+        this.rightCorrection = right;
+    }
+
+    /**
+     * @return how long the controllers have been running the profile in seconds, which is where on the path they are
+     */
+    public double getTime() {
+        return running ? Timer.getFPGATimestamp() - startTime : 0;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isFinished() {
+        return allPushed && left.isFinished() && right.isFinished();
+    }
+
+    public boolean hasUnderrun() {
+        return left.hasUnderrun() || right.hasUnderrun();
+    }
+
+    /**
+     * Stops streaming and releases the motors
+     */
+    public void stop() {
+        // closing waits for a stream call that's already running to finish
+        notifier.close();
+        left.end();
+        right.end();
+        left.updateOutput();
+        right.updateOutput();
+    }
+}
@@ -54,7 +54,8 @@ public class Util {
                     f.accept((T) obj);
                 }
             } catch (ClassCastException e) {
-                DriverStation.reportError("A setter used the wrong type", false);
+                // this runs every loop for a bad entry, so it can't go straight to the console
+                Log.error("The setter for {} used the wrong type", name);
             }
         });
     }
@@ -0,0 +1,129 @@
+package frc.robot.base.util;
+
+/**
+ * Tells when a velocity controlled mechanism (ex. a flywheel) has actually reached its demand
+ * It's ready once the measured velocity has stayed within the tolerance band for the settle time,
+ * and stays ready until it falls out of a wider band so small dips don't flicker it
+ */
+public class VelocityReadyDetector {
+
+    /**
+     * the allowed error as a fraction of the demand
+     */
+    private final double tolerance;
+    /**
+     * the smallest allowed error, so low demands don't get an impossibly tight band
+     */
+    private final double minTolerance;
+    /**
+     * how long the velocity has to stay in the band in seconds
+     */
+    private final double settleTime;
+    /**
+     * how much wider the band is for staying ready than for becoming ready
+     */
+    private static final double EXIT_BAND_SCALE = 2;
+
+    private double demand = 0;
+    private boolean ready = false;
+    private double spinUpStart = Double.NaN;
+    private double inBandSince = Double.NaN;
+    // only the first time each spin up becomes ready counts towards time to ready
+    private boolean timedThisSpinUp = false;
+
+    private double lastTimeToReady = 0;
+    private double totalTimeToReady = 0;
+    private int readyCount = 0;
+
+    /**
+     * @param tolerance the allowed error as a fraction of the demand, ex. 0.03 for 3%
+     * @param minTolerance the smallest allowed error in the velocity's units
+     * @param settleTime how long the velocity has to stay in the band in seconds
+     */
+    public VelocityReadyDetector(double tolerance, double minTolerance, double settleTime) {
+        this.tolerance = tolerance;
+        this.minTolerance = minTolerance;
+        this.settleTime = settleTime;
+    }
+
+    /**
+     * Checks the latest velocity; call once per loop
+     * A demand of 0 means the mechanism isn't being used, and a demand that moves out of the band starts a new spin up
+     * @param demand the velocity being asked for
+     * @param measured the velocity measured
+     * @param time the current time in seconds
+     * @return whether the mechanism is ready
+     */
+    public boolean update(double demand, double measured, double time) {
+        if (demand == 0) {
+            reset();
+            return false;
+        }
+        double band = Math.max(Math.abs(demand) * tolerance, minTolerance);
+        if (Double.isNaN(spinUpStart) || Math.abs(demand - this.demand) > band) {
+            reset();
+            spinUpStart = time;
+        }
+        this.demand = demand;
+
+        double error = Math.abs(demand - measured);
+        if (ready) {
+            if (error > band * EXIT_BAND_SCALE) {
+                ready = false;
+                inBandSince = Double.NaN;
+            }
+        } else if (error <= band) {
+            if (Double.isNaN(inBandSince)) {
+                inBandSince = time;
+            }
+            if (time - inBandSince >= settleTime) {
+                ready = true;
+                recordReady(time - spinUpStart);
+            }
+        } else {
+            inBandSince = Double.NaN;
+        }
+        return ready;
+    }
+
+    private void recordReady(double timeToReady) {
+        if (timedThisSpinUp) return;
+        timedThisSpinUp = true;
+        lastTimeToReady = timeToReady;
+        totalTimeToReady += timeToReady;
+        readyCount++;
+    }
+
+    /**
+     * Forgets the current spin up; the next update starts timing a new one
+     */
+    public void reset() {
+        demand = 0;
+        ready = false;
+        spinUpStart = Double.NaN;
+        inBandSince = Double.NaN;
+        timedThisSpinUp = false;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return how long the last spin up took to become ready in seconds
+     */
+    public double getLastTimeToReady() {
+        return lastTimeToReady;
+    }
+
+    /**
+     * @return the average time spin ups took to become ready in seconds
+     */
+    public double getAverageTimeToReady() {
+        return readyCount == 0 ? 0 : totalTimeToReady / readyCount;
+    }
+
+    public int getReadyCount() {
+        return readyCount;
+    }
+}
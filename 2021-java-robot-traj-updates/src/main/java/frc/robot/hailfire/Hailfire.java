@@ -6,31 +6,53 @@ import frc.robot.base.action.Action;
 import frc.robot.base.action.SetupAction;
 import frc.robot.base.action.TimedAction;
 import frc.robot.base.input.Pov;
-import frc.robot.base.util.PosControl;
+import frc.robot.base.util.ProfileFollower;
 import frc.robot.base.util.DriveUtil;
+import frc.robot.base.util.ParallelInit;
 import frc.robot.hailfire.subsystem.Climber;
 import frc.robot.hailfire.subsystem.DriveTrain;
 import frc.robot.hailfire.subsystem.Intake;
 import frc.robot.hailfire.subsystem.Shooter;
 import frc.robot.base.input.Controller;
 import frc.robot.base.device.Pixy;
+import frc.robot.base.device.motor.ConfigApplier;
+import frc.robot.base.device.motor.PhoenixMotor;
 
 //JAS added
 import com.analog.adis16448.frc.ADIS16448_IMU;
 
 import java.util.List;
 
+import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 @SuppressWarnings("unused")
 public class Hailfire extends Robot {
     
-    private final DriveTrain driveTrain = register(new DriveTrain());
-    private final Shooter shooter = register(new Shooter());
-    private final Intake intake = register(new Intake());
-    private final Climber climber = register(new Climber());
+    // every subsystem configures its own motor controllers, so bring them all up at once
+    private final ParallelInit deviceInit = new ParallelInit();
+    private final ParallelInit.Task<DriveTrain> driveTrainInit = deviceInit.submit("driveTrain", DriveTrain::new);
+    private final ParallelInit.Task<Shooter> shooterInit = deviceInit.submit("shooter", Shooter::new);
+    private final ParallelInit.Task<Intake> intakeInit = deviceInit.submit("intake", Intake::new);
+    private final ParallelInit.Task<Climber> climberInit = deviceInit.submit("climber", Climber::new);
+
+    private final DriveTrain driveTrain = register(driveTrainInit.join());
+    private final Shooter shooter = register(shooterInit.join());
+    private final Intake intake = register(intakeInit.join());
+    private final Climber climber = register(climberInit.join());
     
-    private PosControl drivePosControl = new PosControl(10, 1, 0.1, 0.5, 5);
+    // ft/s, ft/s^2 and ft/s^3 out to 10 ft, with the output in ft/s
+    private final ProfileFollower driveFollower = new ProfileFollower(5, 4, 20, 1, 1, 0.1, 5);
+
+    private final NetworkTableEntry canSetCalls = NTHandler.getRobotEntry("can/setCalls");
+    private final NetworkTableEntry canSetCallsSkipped = NTHandler.getRobotEntry("can/setCallsSkipped");
+    private final NetworkTableEntry canPeriodicFramesPerSec = NTHandler.getRobotEntry("can/periodicFramesPerSec");
+    private final NetworkTableEntry canPeriodicBusLoad = NTHandler.getRobotEntry("can/periodicBusLoadPercent");
+    private final NetworkTableEntry canConfigsPending = NTHandler.getRobotEntry("can/configsPending");
+    private final NetworkTableEntry canConfigsFailed = NTHandler.getRobotEntry("can/configsFailed");
+    private final NetworkTableEntry canConfigRetries = NTHandler.getRobotEntry("can/configRetries");
+    private final NetworkTableEntry canLastConfigMs = NTHandler.getRobotEntry("can/lastConfigMs");
+    private final NetworkTableEntry canConfigsSkipped = NTHandler.getRobotEntry("can/configsSkipped");
     
     public Hailfire() {
         this.setAutoActions(auto1);
@@ -40,6 +62,12 @@ public class Hailfire extends Robot {
         registerController(Controls.aux);
     }
 
+    @Override
+    public void robotInit() {
+        deviceInit.finish();
+        super.robotInit();
+    }
+
     @Override
     public void robotPeriodic() {
         super.robotPeriodic();
@@ -50,10 +78,20 @@ public class Hailfire extends Robot {
         }
 
         Vision.update();
+
+        canSetCalls.setDouble(PhoenixMotor.getTotalSetCalls());
+        canSetCallsSkipped.setDouble(PhoenixMotor.getTotalSetCallsSkipped());
+        canPeriodicFramesPerSec.setDouble(PhoenixMotor.getTotalPeriodicFramesPerSecond());
+        canPeriodicBusLoad.setDouble(PhoenixMotor.getEstimatedPeriodicBusLoad());
+        canConfigsPending.setDouble(ConfigApplier.getPending());
+        canConfigsFailed.setDouble(ConfigApplier.getFailed());
+        canConfigRetries.setDouble(ConfigApplier.getRetries());
+        canLastConfigMs.setDouble(ConfigApplier.getLastApplyMs());
+        canConfigsSkipped.setDouble(PhoenixMotor.getConfigsSkipped());
     }
 
     private final String[] autoList = new String[]{
-        "None", "Auto 1", "Trajectory Test", "Right Motor Test"
+        "None", "Auto 1", "Trajectory Test", "Right Motor Test", "Streamed Trajectory Test"
     };
 
     @Override
@@ -73,6 +111,9 @@ public class Hailfire extends Robot {
             case "Right Motor Test":
                 setAutoActions(auto3);
                 break;
+            case "Streamed Trajectory Test":
+                setAutoActions(auto4);
+                break;
         }
     }
 
@@ -82,11 +123,12 @@ public class Hailfire extends Robot {
     // old auto
     private final List<? extends Action> auto1 = List.of(
             new SetupAction(() -> driveTrain.startAction(
-                    new Action(
+                    new SetupAction(
+                            () -> driveFollower.start(driveTrain.getAverageDistance(), 10),
                             () -> {
-                                driveTrain.setPercentOutput(drivePosControl.getSpeed(driveTrain.getAverageDistance())/5.5);
+                                driveTrain.setPercentOutput(driveFollower.calculate(driveTrain.getAverageDistance())/5.5);
                             },
-                            drivePosControl::isFinished
+                            driveFollower::isFinished
                     )
             ), driveTrain::isFinished),
             new TimedAction(2000),
@@ -117,6 +159,24 @@ public class Hailfire extends Robot {
         ), driveTrain::isFinished)
     );
     
+    // same as auto2 but the talons run the path themselves
+    private final List<? extends Action> auto4 = List.of(
+        new SetupAction(() -> driveTrain.startAction(
+            new SetupAction(
+                () -> DriveUtil.startProfiledTrajectory(
+                    driveTrain.TURN_LEFT,
+                    driveTrain
+                )
+            )
+        ), driveTrain::isFinished),
+        new SetupAction(() -> driveTrain.startAction(
+            new Action(
+                () -> DriveUtil.followProfiledPath( ),
+                DriveUtil::finishedProfiledPath
+            )
+        ), driveTrain::isFinished)
+    );
+
     private final List<? extends Action> auto3 = List.of(
         new TimedAction(() -> driveTrain.startAction(
             new Action(() -> {
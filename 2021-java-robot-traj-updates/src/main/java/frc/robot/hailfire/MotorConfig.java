@@ -4,9 +4,10 @@ import frc.robot.base.device.motor.EncoderMotorConfig;
 
 public class MotorConfig {
     public static class DriveTrain {
+        public static final int COUNTS_PER_REV = 4 * 360;
         public static final EncoderMotorConfig LOW_CONFIG = new EncoderMotorConfig(
                 3f/12f, // wheel radius
-                4 * 360, // counts per rev
+                COUNTS_PER_REV, // counts per rev
                 2.02895, // f
                 1.76430, // p
                 0.00264, // i
@@ -15,23 +16,47 @@ public class MotorConfig {
         );
         public static final EncoderMotorConfig HIGH_CONFIG = new EncoderMotorConfig(
                 3f/12f,
-                4 * 360,
+                COUNTS_PER_REV,
                 0.5873,
                 0.51069,
                 0.0012,
                 0.00638,
                 150
-        );
+        ).withSlot(1); // both gears are loaded at startup, shifting just switches slots
+        // drive characterization in low gear (volts, feet); kV stays 0 since the F gain already covers velocity
+        public static final double KS = 1.1;
+        public static final double KV = 0;
+        public static final double KA = 0.25;
+
+        // motion profiles run position P on top of velocity F, so they get their own low gear slot
+        public static final EncoderMotorConfig LOW_PROFILE_CONFIG = new EncoderMotorConfig(
+                3f/12f,
+                COUNTS_PER_REV,
+                2.02895,
+                0.33,
+                0,
+                0,
+                0
+        ).withSlot(2);
     }
 
     public static class Shooter {
-        public static EncoderMotorConfig CONFIG = new EncoderMotorConfig(
-                2048 * 4, // counts per rev
+        public static final int COUNTS_PER_REV = 2048 * 4;
+        public static final EncoderMotorConfig CONFIG = new EncoderMotorConfig(
+                COUNTS_PER_REV, // counts per rev
                 .0154, // f
                 .0060, // p
                 .0001, // i
                 .0001, // d
                 200 // i zone
         );
+        /**
+         * the most any shooter gain can be set to from the dashboard
+         */
+        public static final double MAX_GAIN = 10;
+        /**
+         * the gain slot live tuned gains take turns with CONFIG's slot in
+         */
+        public static final int TUNING_SLOT = 1;
     }
 }
@@ -0,0 +1,155 @@
+package frc.robot.hailfire;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.base.util.InterpolatingTable;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Flywheel speeds and pitch for a shot, looked up from how high the target is in the camera
+ * The vision pitch offset goes down as the robot backs away, so it's used as the distance directly
+ * instead of converting it with the camera's mounting angle
+ * Reloading and saving at runtime happen on their own thread, so the table is only ever touched by the robot loop:
+ * a reload is swapped in by the next update and a save writes a copy
+ */
+public class ShotMap {
+
+    public static final int LEFT_RPM = 0;
+    public static final int RIGHT_RPM = 1;
+    /**
+     * the pitch encoder target, in the same units as the shooter's pitchTarget
+     */
+    public static final int PITCH = 2;
+
+    private static final String FILE_NAME = "shotmap.csv";
+    private static final String HEADER = "vision pitch offset, left rpm, right rpm, pitch encoder target";
+
+    // its own thread so a slow flash write never holds up motor configs
+    private static final ExecutorService fileWorker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shotmap-file");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private InterpolatingTable table = newTable();
+    private final double[] shot = new double[3];
+    private boolean hasShot = false;
+
+    // a table loaded on the file thread waiting for the robot loop to swap it in
+    private final AtomicReference<InterpolatingTable> loaded = new AtomicReference<>();
+    private final AtomicInteger filesPending = new AtomicInteger();
+
+    /**
+     * Loads the table right away; this is done during startup, not on the robot loop
+     */
+    public ShotMap() {
+        table.load(getFile());
+    }
+
+    private static InterpolatingTable newTable() {
+        return new InterpolatingTable(3, InterpolatingTable.Interpolation.MONOTONE_CUBIC);
+    }
+
+    /**
+     * Looks up the shot for a target
+     * @param pitchOffset the vision pitch offset of the target
+     * @return whether the table had anything in it
+     */
+    public boolean update(double pitchOffset) {
+        hasShot = current().get(pitchOffset, shot);
+        return hasShot;
+    }
+
+    public boolean hasShot() {
+        return hasShot;
+    }
+
+    public double getLeftRpm() {
+        return shot[LEFT_RPM];
+    }
+
+    public double getRightRpm() {
+        return shot[RIGHT_RPM];
+    }
+
+    public double getPitch() {
+        return shot[PITCH];
+    }
+
+    /**
+     * Adds or replaces a row, ex. after tuning a shot on the field
+     */
+    public void put(double pitchOffset, double leftRpm, double rightRpm, double pitch) {
+        current().put(pitchOffset, leftRpm, rightRpm, pitch);
+    }
+
+    public boolean remove(double pitchOffset) {
+        return current().remove(pitchOffset);
+    }
+
+    /**
+     * Reloads the table from the deploy directory in the background, throwing away anything changed at runtime
+     * The new table is used from the next update on; if the file can't be read the table is left alone
+     */
+    public void load() {
+        runFile("load", () -> {
+            InterpolatingTable reloaded = newTable();
+            if (reloaded.load(getFile())) {
+                loaded.set(reloaded);
+            }
+        });
+    }
+
+    /**
+     * Writes the table back to the deploy directory in the background so runtime changes survive a reboot
+     * (but not a deploy; copy the file back into the project to keep it)
+     */
+    public void save() {
+        InterpolatingTable snapshot = current().copy();
+        runFile("save", () -> snapshot.save(getFile(), HEADER));
+    }
+
+    private void runFile(String action, Runnable task) {
+        filesPending.incrementAndGet();
+        fileWorker.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                DriverStation.reportError("Unable to " + action + " the shot map: " + e, e.getStackTrace());
+            } finally {
+                filesPending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * @return whether a load or save is still running
+     */
+    public boolean isFileBusy() {
+        return filesPending.get() > 0;
+    }
+
+    public int size() {
+        return current().size();
+    }
+
+    /**
+     * @return the table, swapping in a reloaded one if it's finished loading
+     */
+    private InterpolatingTable current() {
+        InterpolatingTable reloaded = loaded.getAndSet(null);
+        if (reloaded != null) {
+            table = reloaded;
+        }
+        return table;
+    }
+
+    private static File getFile() {
+        return new File(Filesystem.getDeployDirectory(), FILE_NAME);
+    }
+}
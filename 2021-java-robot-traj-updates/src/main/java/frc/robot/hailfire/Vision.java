@@ -1,45 +1,256 @@
 package frc.robot.hailfire;
 
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.EntryNotification;
 import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableValue;
+import edu.wpi.first.wpilibj.Timer;
 import frc.robot.base.NTHandler;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Results from the vision coprocessor
+ * A listener on the NT thread turns each camera frame into one immutable Frame, so the robot loop never sees the yaw
+ * from one frame with the pitch from another
+ * If the coprocessor publishes the whole frame as one array (data/Frame) that's used, since it can't be torn;
+ * otherwise a frame is read from the separate entries each time OffsetX changes, and thrown out if any of the others
+ * has already been changed by a later frame
+ * The entries are the ones under /vision/data that the coprocessor publishes; the old top level names
+ * (yawOffset, pitchOffset, targetFound, watchdog) aren't updated anymore
+ */
 public class Vision {
 
-    // NOTE: old NTV names and variables, this will probably get deleted
-    private static NetworkTableEntry watchdogEntry = NTHandler.getVisionEntry("watchdog");
-    private static double lastWatchdogVal = 0;
-    private static long staleStart = 0;
+    /**
+     * One camera frame's results
+     */
+    public static final class Frame {
+        public final double yaw;
+        public final double pitch;
+        public final boolean found;
+        /**
+         * the watchdog value the coprocessor sent with this frame, or the frame count if it doesn't send one
+         */
+        public final double id;
+        /**
+         * when the camera took the frame in FPGA seconds, estimated from when it arrived and the camera latency
+         */
+        public final double captureTime;
+        /**
+         * when it got to the robot in FPGA seconds
+         */
+        public final double arrivalTime;
+
+        public Frame(double yaw, double pitch, boolean found, double id, double captureTime, double arrivalTime) {
+            this.yaw = yaw;
+            this.pitch = pitch;
+            this.found = found;
+            this.id = id;
+            this.captureTime = captureTime;
+            this.arrivalTime = arrivalTime;
+        }
+
+        /**
+         * @return how long ago the camera took the frame in seconds
+         */
+        public double getAge() {
+            return Timer.getFPGATimestamp() - captureTime;
+        }
+    }
+
+    /**
+     * a target seen longer ago than this in seconds is stale
+     */
+    public static final double STALE_SECONDS = 0.5;
+    private static final Frame NO_FRAME = new Frame(0, 0, false, 0, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+    /**
+     * how much each new frame interval counts towards the frame rate
+     */
+    private static final double RATE_SMOOTHING = 0.1;
+
+    /**
+     * the whole frame as [watchdog, found (0 or 1), yaw, pitch, latency ms], if the coprocessor publishes it
+     */
+    private static final NetworkTableEntry frameEntry = NTHandler.getVisionEntry("data/Frame");
+    private static final int FRAME_LENGTH = 5;
+    /**
+     * a separate entry that changed more than this many microseconds after OffsetX is from a later frame
+     */
+    private static final long SAME_FRAME_US = 5000;
+
+    private static final NetworkTableEntry yawEntry = NTHandler.getVisionEntry("data/OffsetX");
+    private static final NetworkTableEntry pitchEntry = NTHandler.getVisionEntry("data/OffsetY");
+    /**
+     * if the coprocessor doesn't publish this, OffsetX only changing while it sees the target is taken as found
+     */
+    private static final NetworkTableEntry targetFoundEntry = NTHandler.getVisionEntry("data/TargetFound");
+    /**
+     * counts up once per frame, if the coprocessor publishes it
+     */
+    private static final NetworkTableEntry watchdogEntry = NTHandler.getVisionEntry("data/Watchdog");
+    /**
+     * how long the coprocessor took from capture to sending, if it reports it
+     */
+    private static final NetworkTableEntry latencyEntry = NTHandler.getVisionEntry("data/LatencyMs");
+
+    private static final AtomicReference<Frame> latest = new AtomicReference<>(NO_FRAME);
+    private static final AtomicReference<Frame> lastFound = new AtomicReference<>(NO_FRAME);
+
+    // only touched on the NT listener thread
+    private static double lastArrival = Double.NaN;
+    private static double lastId = Double.NaN;
+    private static volatile boolean usingFrameEntry = false;
+    private static volatile double frameInterval = 0;
+    private static volatile long frames = 0;
+    private static volatile long skippedFrames = 0;
+    private static volatile long tornFrames = 0;
+
+    // only touched on the robot loop
+    private static Frame lastUsed = NO_FRAME;
+    private static double latencyMs = 0;
+
+    private static final NetworkTableEntry nte_fps = NTHandler.getRobotEntry("vision/fps");
+    private static final NetworkTableEntry nte_latencyMs = NTHandler.getRobotEntry("vision/latencyMs");
+    private static final NetworkTableEntry nte_frames = NTHandler.getRobotEntry("vision/frames");
+    private static final NetworkTableEntry nte_skippedFrames = NTHandler.getRobotEntry("vision/skippedFrames");
+    private static final NetworkTableEntry nte_tornFrames = NTHandler.getRobotEntry("vision/tornFrames");
+    private static final NetworkTableEntry nte_stale = NTHandler.getRobotEntry("vision/stale");
+
+    static {
+        int flags = EntryListenerFlags.kNew | EntryListenerFlags.kUpdate | EntryListenerFlags.kImmediate;
+        frameEntry.addListener(Vision::onFrameEntry, flags);
+        yawEntry.addListener(Vision::onYawEntry, flags);
+    }
+
+    private static void onFrameEntry(EntryNotification notification) {
+        if (!notification.value.isDoubleArray()) return;
+        double[] values = notification.value.getDoubleArray();
+        if (values.length < FRAME_LENGTH) return;
+        usingFrameEntry = true;
+        addFrame(values[2], values[3], values[1] != 0, values[0], values[4], notification.value.getTime());
+    }
+
+    private static void onYawEntry(EntryNotification notification) {
+        if (usingFrameEntry || !notification.value.isDouble()) return;
+        long time = notification.value.getTime();
+        NetworkTableValue pitch = pitchEntry.getValue();
+        NetworkTableValue found = targetFoundEntry.getValue();
+        NetworkTableValue watchdog = watchdogEntry.getValue();
+        NetworkTableValue latency = latencyEntry.getValue();
+        // an entry that changed after OffsetX already holds the next frame's value; that frame gets read on its own
+        if (isLater(pitch, time) || isLater(found, time) || isLater(watchdog, time) || isLater(latency, time)) {
+            tornFrames++;
+            return;
+        }
+        addFrame(
+            notification.value.getDouble(),
+            pitch.isDouble() ? pitch.getDouble() : 0,
+            !found.isBoolean() || found.getBoolean(),
+            watchdog.isDouble() ? watchdog.getDouble() : Double.NaN,
+            latency.isDouble() ? latency.getDouble() : 0,
+            time);
+    }
 
-    private static NetworkTableEntry targetFoundEntry = NTHandler.getVisionEntry("targetFound");
+    private static boolean isLater(NetworkTableValue value, long time) {
+        return value.getTime() - time > SAME_FRAME_US;
+    }
 
-    private static NetworkTableEntry yawEntry = NTHandler.getVisionEntry("yawOffset");
-    private static NetworkTableEntry pitchEntry = NTHandler.getVisionEntry("pitchOffset");
+    /**
+     * @param id the watchdog, NaN if there isn't one
+     * @param timeUs when the frame got here in NT microseconds, which are on the same clock as the FPGA timestamp
+     */
+    private static void addFrame(double yaw, double pitch, boolean found, double id, double latencyMs, long timeUs) {
+        double arrival = timeUs * 1e-6;
+        double capture = arrival - latencyMs * 0.001;
+        Frame frame = new Frame(yaw, pitch, found, Double.isNaN(id) ? frames : id, capture, arrival);
+        latest.set(frame);
+        if (frame.found) {
+            lastFound.set(frame);
+        }
 
-    private static double yawOffset = 0;
-    private static double pitchOffset = 0;
+        if (!Double.isNaN(lastArrival) && arrival > lastArrival) {
+            double interval = arrival - lastArrival;
+            frameInterval = frameInterval == 0
+                ? interval
+                : frameInterval + (interval - frameInterval) * RATE_SMOOTHING;
+        }
+        // the watchdog counts up once per frame, so a jump means frames never made it here
+        // if it goes backwards or repeats the coprocessor restarted, so counting just starts again from there
+        if (!Double.isNaN(id) && !Double.isNaN(lastId)) {
+            long delta = Math.round(id - lastId);
+            if (delta > 1) {
+                skippedFrames += delta - 1;
+            }
+        }
+        lastArrival = arrival;
+        lastId = id;
+        frames++;
+    }
 
+    /**
+     * @return the newest frame, whether or not it saw the target
+     */
+    public static Frame getLatest() {
+        return latest.get();
+    }
+
+    /**
+     * @return the newest frame that saw the target
+     */
+    public static Frame getLastFound() {
+        return lastFound.get();
+    }
+
+    /**
+     * @return the yaw of the last frame that saw the target
+     */
     public static double getYawOffset() {
-        return isStale()
-                ? yawOffset
-                : (yawOffset = yawEntry.getDouble(0));
+        return lastFound.get().yaw;
     }
 
+    /**
+     * @return the pitch of the last frame that saw the target
+     */
     public static double getPitchOffset() {
-        return isStale()
-                ? pitchOffset
-                : (pitchOffset = pitchEntry.getDouble(0));
+        return lastFound.get().pitch;
     }
 
+    /**
+     * @return whether the target hasn't been seen in a frame taken in the last STALE_SECONDS
+     */
     public static boolean isStale() {
-        return System.currentTimeMillis() - staleStart > 500;
+        return lastFound.get().getAge() > STALE_SECONDS;
+    }
+
+    /**
+     * @return frames per second coming from the coprocessor
+     */
+    public static double getFrameRate() {
+        double interval = frameInterval;
+        return interval > 0 ? 1 / interval : 0;
+    }
+
+    /**
+     * @return how long from the camera taking the last frame to the robot loop first seeing it in milliseconds
+     */
+    public static double getLatencyMs() {
+        return latencyMs;
     }
 
+    /**
+     * Updates the metrics; call once per loop
+     */
     public static void update() {
-        double currentVal = watchdogEntry.getDouble(0);
-        if(currentVal != lastWatchdogVal && targetFoundEntry.getBoolean(false)) {
-            staleStart = System.currentTimeMillis();
+        Frame frame = latest.get();
+        if (frame != lastUsed && frame != NO_FRAME) {
+            lastUsed = frame;
+            latencyMs = frame.getAge() * 1000;
         }
-        lastWatchdogVal = currentVal;
+        nte_fps.setDouble(getFrameRate());
+        nte_latencyMs.setDouble(latencyMs);
+        nte_frames.setDouble(frames);
+        nte_skippedFrames.setDouble(skippedFrames);
+        nte_tornFrames.setDouble(tornFrames);
+        nte_stale.setBoolean(isStale());
     }
-
 }
@@ -3,6 +3,7 @@ package frc.robot.hailfire.subsystem;
 import com.ctre.phoenix.motorcontrol.can.TalonSRX;
 import frc.robot.base.device.motor.Motor;
 import frc.robot.base.device.motor.PhoenixMotor;
+import frc.robot.base.device.motor.StatusFrameProfile;
 import frc.robot.base.util.Util;
 import frc.robot.hailfire.Controls;
 import frc.robot.hailfire.IDs;
@@ -15,7 +16,8 @@ import java.util.function.Supplier;
 public class Climber extends Subsystem {
 
     private DoubleSolenoid4150 bottomSolenoid = new DoubleSolenoid4150(IDs.Climber.BOTTOM_SOLENOID_FORWARD, IDs.Climber.BOTTOM_SOLENOID_REVERSE);
-    private Motor winch = new PhoenixMotor(new TalonSRX(IDs.Climber.WINCH_MOTOR));
+    private Motor winch = new PhoenixMotor(new TalonSRX(IDs.Climber.WINCH_MOTOR))
+            .setStatusFrameProfile(StatusFrameProfile.OPEN_LOOP);
 
     public Climber() {
         super("climber");
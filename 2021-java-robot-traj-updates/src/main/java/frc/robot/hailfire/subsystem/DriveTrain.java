@@ -12,20 +12,33 @@ import com.ctre.phoenix.motorcontrol.can.VictorSPX;
 
 //import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.wpilibj.trajectory.Trajectory;
+import frc.robot.base.RobotMode;
 import frc.robot.base.subsystem.StandardDriveTrain;
 //JAS uncomment if using alt gyro code.
 //import frc.robot.base.util.ALT_ADIS16448_IMU;
+import frc.robot.base.util.DriveFeedforward;
 import frc.robot.base.util.DriveUtil;
-import frc.robot.base.util.PosControl;
+import frc.robot.base.util.GyroDriftModel;
+import frc.robot.base.util.Log;
+import frc.robot.base.util.PoseEstimator;
+import frc.robot.base.util.ProfileFollower;
+import frc.robot.base.util.TargetTracker;
 import frc.robot.base.util.Util;
 import frc.robot.hailfire.Controls;
 import frc.robot.hailfire.IDs;
+import frc.robot.base.device.motor.EncoderMotor;
+import frc.robot.base.device.motor.EncoderMotorConfig;
 import frc.robot.base.device.motor.PhoenixMotorPair;
+import frc.robot.base.device.motor.SimEncoderMotor;
+import frc.robot.base.device.motor.StatusFrameProfile;
 import frc.robot.base.device.DoubleSolenoid4150;
 import frc.robot.base.device.Pixy;
 import frc.robot.hailfire.MotorConfig;
 import frc.robot.hailfire.Vision;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotState;
 import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.Timer;
 
 public class DriveTrain extends StandardDriveTrain {
 
@@ -35,6 +48,8 @@ public class DriveTrain extends StandardDriveTrain {
     //private static ALT_ADIS16448_IMU gyro; //JAS moved init, removed final, made static = new ADIS16448_IMU( );
 
     private static final double LOW_MAX_SPEED = 5.5;
+    public static final double TRACK_WIDTH = 24.d / 12.d; // feet
+    private static final double G_TO_FT_PER_SEC2 = 32.174;
 
     private DoubleSolenoid4150 evoShifter = new DoubleSolenoid4150(
             IDs.DriveTrain.LEFT_EVO_SHIFTER_FORWARD,
@@ -55,60 +70,160 @@ public class DriveTrain extends StandardDriveTrain {
         var motor = new PhoenixMotorPair(
             new TalonSRX(master),
             new VictorSPX(follower),
-            MotorConfig.DriveTrain.LOW_CONFIG
+            MotorConfig.DriveTrain.LOW_CONFIG,
+            StatusFrameProfile.FAST_FEEDBACK
         );
         motor.setNeutralMode(NeutralMode.Brake);
         motor.setRampTime(0.5);
         return motor;
     }
 
+    // simulated drive: 2 CIMs per side through the low gear, half the robot's mass on each side's 3 inch wheels
+    private static final double SIM_LOW_GEARING = 20;
+    private static final double SIM_SIDE_INERTIA = 30 * 0.0762 * 0.0762;
+
+    /**
+     * Creates one side of the drive train, or a simulated one when not running on the robot
+     */
+    private static EncoderMotor createSide(int master, int follower) {
+        if (RobotBase.isSimulation()) {
+            return new SimEncoderMotor(
+                MotorConfig.DriveTrain.LOW_CONFIG, MotorConfig.DriveTrain.COUNTS_PER_REV,
+                SimEncoderMotor.MotorType.CIM, 2, SIM_LOW_GEARING, SIM_SIDE_INERTIA
+            );
+        }
+        return new PhoenixMotorPair(
+            new TalonSRX(master),
+            new VictorSPX(follower),
+            MotorConfig.DriveTrain.LOW_CONFIG,
+            StatusFrameProfile.FAST_FEEDBACK
+        );
+    }
+
     public DriveTrain() {
         super(
-                new PhoenixMotorPair(
-                        new TalonSRX(IDs.DriveTrain.LEFT_MOTOR_MASTER),
-                        new VictorSPX(IDs.DriveTrain.LEFT_MOTOR_FOLLOWER),
-                        MotorConfig.DriveTrain.LOW_CONFIG
-                ).invert(),
-                new PhoenixMotorPair(
-                        new TalonSRX(IDs.DriveTrain.RIGHT_MOTOR_MASTER),
-                        new VictorSPX(IDs.DriveTrain.RIGHT_MOTOR_FOLLOWER),
-                        MotorConfig.DriveTrain.LOW_CONFIG
-                ),
-                10, 19, LOW_MAX_SPEED);
+                createSide(IDs.DriveTrain.LEFT_MOTOR_MASTER, IDs.DriveTrain.LEFT_MOTOR_FOLLOWER).invert(),
+                createSide(IDs.DriveTrain.RIGHT_MOTOR_MASTER, IDs.DriveTrain.RIGHT_MOTOR_FOLLOWER),
+                // the driver can stop a bit quicker than they can speed up
+                10, 14, 19, LOW_MAX_SPEED);
 
         //JAS moved gyro init to constructor.  Used different call to set longer cal time.
         //--------calibrate the gyro....
         //                        yaw axis, port, cal time
         gyro = new ADIS16448_IMU( ADIS16448_IMU.IMUAxis.kZ, SPI.Port.kMXP, 8 ); // 8 second cal time
+
+        preloadMotorConfigs(
+            MotorConfig.DriveTrain.LOW_CONFIG,
+            MotorConfig.DriveTrain.HIGH_CONFIG,
+            MotorConfig.DriveTrain.LOW_PROFILE_CONFIG
+        );
         //ALT gyro with potentially more accurate cal routine.
         //gyro = new ALT_ADIS16448_IMU( ADIS16448_IMU.IMUAxis.kZ, SPI.Port.kMXP, 8 ); // 8 second cal time
     }
     
-    private PosControl posControl;
-    private double angleX = 0;
+    // the target's heading is tracked from every camera frame and the gyro, in degrees with the gyro's clockwise positive
+    private final TargetTracker targetTracker = new TargetTracker(
+        0.5, 0.1, // alpha, beta
+        8, 3, // outlier gate in degrees, frames thrown out in a row before starting over
+        Vision.STALE_SECONDS);
+    private Vision.Frame lastVisionFrame = null;
+
+    // auto aim turns to the tracked target heading
+    /**
+     * how long past the first profile's length an aim can take, in seconds from when it started
+     */
+    private static final double AIM_TIMEOUT = 2;
+    /**
+     * the oldest the newest camera frame can be in seconds for auto aim to start
+     */
+    private static final double AIM_MAX_FRAME_AGE = 0.25;
+    private final ProfileFollower aimFollower = new ProfileFollower(
+        180, 360, 2000, // deg/s, deg/s^2, deg/s^3
+        1, 4, // output in deg/s per deg/s of profile and per degree behind it
+        1, 240);
+    private boolean oldAimButton = false;
+    private double aimStartTime = 0;
+    private double aimDeadline = 0;
+    private double aimTargetHeading = 0;
+    private double lastAimTime = 0;
+    private double lastAimError = 0;
+    private int aimCount = 0;
+    private int aimTimeouts = 0;
 
     //JAS added local storage for sensor data
     private double sensorGyroAngle = 0.0d;
+    private double sensorGyroAngleRaw = 0.0d;
     private double sensorGyroAngleX = 0.0d;
     private double sensorGyroAngleY = 0.0d;
     private double sensorGyroAngleZ = 0.0d;
     private double sensorGyroTemp = 0.0d;
     private int sensorAcquireCalled = 0;
 
+    // the drift model works in the same units as sensorGyroTemp (fahrenheit)
+    private final GyroDriftModel gyroDrift = new GyroDriftModel();
+    private double loggedDriftOffset = 0;
+    private double loggedDriftSlope = 0;
+    private boolean oldApplyLoggedDrift = false;
+    private boolean applyLoggedDrift = false;
+
+    private final PoseEstimator poseEstimator = new PoseEstimator(TRACK_WIDTH);
+    private final DriveFeedforward feedforward = new DriveFeedforward(
+        MotorConfig.DriveTrain.KS, MotorConfig.DriveTrain.KV, MotorConfig.DriveTrain.KA, TRACK_WIDTH);
+    private double lastEstimateTime = 0;
+
     //JAS added common sensor acquire routine
     @Override
     public void acquire() {
+        // --------read sensors from base class first so the wheel speeds are current for the drift model.
+        super.acquire();
         // --------read gyro
-        sensorGyroAngle = gyro.getAngle();
+        sensorGyroTemp = gyro.getTemperature() * 1.8d + 32.0d;
+        sensorGyroAngleRaw = gyro.getAngle();
+        sensorGyroAngle = gyroDrift.update(sensorGyroAngleRaw, sensorGyroTemp, isStationary());
         sensorGyroAngleX = gyro.getGyroAngleX();
         sensorGyroAngleY = gyro.getGyroAngleY();
         sensorGyroAngleZ = gyro.getGyroAngleZ();
-        sensorGyroTemp = gyro.getTemperature() * 1.8d + 32.0d;
-        // --------read sensors from base class.
-        super.acquire();
+        // --------fuse wheels, gyro and accelerometer; the gyro is clockwise positive and the estimator isn't
+        // stale wheel readings are skipped, the next fresh one covers the whole gap
+        if (!isSampleStale()) {
+            double sampleTime = getSampleTimestamp();
+            poseEstimator.update(
+                getLeftDistance(), getRightDistance(), -sensorGyroAngle,
+                gyro.getAccelInstantX() * G_TO_FT_PER_SEC2,
+                sampleTime - lastEstimateTime);
+            lastEstimateTime = sampleTime;
+        }
+        updateTargetTracker();
+        updateShiftTimer();
         sensorAcquireCalled = (sensorAcquireCalled+1) % 2048;
     }
 
+    @Override
+    public void periodic() {
+        super.periodic();
+        // use a fit from logged sessions if the boolean applyLoggedDrift changed
+        if (oldApplyLoggedDrift != applyLoggedDrift) {
+            oldApplyLoggedDrift = applyLoggedDrift;
+            gyroDrift.setCoefficients(loggedDriftOffset, loggedDriftSlope);
+        }
+    }
+
+    /**
+     * @return whether the robot can be trusted to not be turning, which is when drift samples are taken
+     */
+    private boolean isStationary() {
+        return RobotState.isDisabled()
+            && Math.abs(getLeftVelocity()) < 0.05
+            && Math.abs(getRightVelocity()) < 0.05;
+    }
+
+    @Override
+    public void onInit(RobotMode mode) {
+        // a streamed path that was cut off by a mode change would otherwise keep streaming
+        DriveUtil.stopProfiledTrajectory();
+        super.onInit(mode);
+    }
+
     @Override
     public void control() {
 
@@ -123,17 +238,15 @@ public class DriveTrain extends StandardDriveTrain {
             setRightVelOrPercent(-turnSpeed);
             this.autoAim = false;
         } else {
-            if (Controls.DriveTrain.AUTO_AIM()) {
-                // TODO: these are complete guesses
-                posControl = new PosControl(0, 0.1, 0.2, 0.5, 2);
-                this.autoAim = true;
+            boolean aimButton = Controls.DriveTrain.AUTO_AIM();
+            if (aimButton && !oldAimButton) {
+                startAim();
+            } else if (!aimButton) {
+                this.autoAim = false;
             }
+            oldAimButton = aimButton;
             if (this.autoAim) {
-                // TODO: I have no idea if these units are compatible or if the direction is correct lmao
-                double calculatedSpeed = posControl.getSpeed(angleX);
-                System.out.println("angle: " + angleX + " / calcspeed: " + calculatedSpeed);
-                this.setLeftVelOrPercent(calculatedSpeed);
-                this.setRightVelOrPercent(-calculatedSpeed);
+                aim();
             } else {
                 DriveUtil.standardDrive(this, Controls.drive, reverseControl);
                 if (Controls.DriveTrain.TOGGLE_REVERSE()) {
@@ -177,22 +290,69 @@ public class DriveTrain extends StandardDriveTrain {
 
     public void shiftToHighGear() {
         if(evoShifter.extend()) {
-            setMotorConfigs(MotorConfig.DriveTrain.HIGH_CONFIG);
+            startShiftTimer();
+            selectMotorConfigs(MotorConfig.DriveTrain.HIGH_CONFIG);
             setCurrentMaxSpeed(getAbsoluteMaxSpeed());
         }
     }
 
     public void shiftToLowGear() {
         if(evoShifter.retract()) {
-            setMotorConfigs(MotorConfig.DriveTrain.LOW_CONFIG);
+            startShiftTimer();
+            selectMotorConfigs(MotorConfig.DriveTrain.LOW_CONFIG);
             setCurrentMaxSpeed(LOW_MAX_SPEED);
         }
     }
 
+    /**
+     * @return the config for the gear the drive train is in
+     */
+    public EncoderMotorConfig getGearConfig() {
+        return evoShifter.isExtended() ? MotorConfig.DriveTrain.HIGH_CONFIG : MotorConfig.DriveTrain.LOW_CONFIG;
+    }
+
+    // shift latency: from the shift being requested until both sides have their gains and can run closed loop
+    private long shiftStartTime = 0;
+    private boolean shiftInProgress = false;
+    private double shiftLatencyMs = 0;
+
+    private void startShiftTimer() {
+        shiftStartTime = System.nanoTime();
+        shiftInProgress = true;
+        updateShiftTimer();
+    }
+
+    private void updateShiftTimer() {
+        if (shiftInProgress && !isMotorConfigPending()) {
+            shiftLatencyMs = (System.nanoTime() - shiftStartTime) * 1e-6d;
+            shiftInProgress = false;
+        }
+    }
+
+    public double getShiftLatencyMs() {
+        return shiftLatencyMs;
+    }
+
     //JAS added
     public double getGyroAngle() {
         return sensorGyroAngle;
     }
+    public PoseEstimator getPoseEstimator() {
+        return poseEstimator;
+    }
+
+    @Override
+    protected void onDistanceReset() {
+        poseEstimator.resetWheels();
+    }
+
+    public DriveFeedforward getFeedforward() {
+        return feedforward;
+    }
+
+    public double getGyroAngleRaw() {
+        return sensorGyroAngleRaw;
+    }
     //JAS added
     public double getGyroAngleX() {
         return sensorGyroAngleX;
@@ -214,40 +374,137 @@ public class DriveTrain extends StandardDriveTrain {
         return (double)sensorAcquireCalled;
     }
 
-    PosControl aimPosControl = new PosControl(0, 1, 0.5, 0.2, 0.5);;
+    /**
+     * Runs the target tracker with this loop's gyro heading and any new camera frame
+     */
+    private void updateTargetTracker() {
+        targetTracker.updateHeading(sensorGyroAngle, Timer.getFPGATimestamp());
+        Vision.Frame frame = Vision.getLatest();
+        if (frame != lastVisionFrame) {
+            lastVisionFrame = frame;
+            if (frame.found) {
+                targetTracker.addMeasurement(frame.yaw, frame.captureTime);
+            }
+        }
+    }
+
+    /**
+     * Starts turning to the tracked target heading
+     */
+    public void startAim() {
+        // the newest frame has to see the target, not just one from a while ago
+        Vision.Frame frame = Vision.getLatest();
+        if (!frame.found || frame.getAge() > AIM_MAX_FRAME_AGE || !targetTracker.isTracking()) {
+            Log.warning("Auto aim has no target to turn to, the newest frame is {} s old", frame.getAge());
+            return;
+        }
+        aimTargetHeading = targetTracker.getTargetHeading();
+        aimFollower.start(sensorGyroAngle, aimTargetHeading);
+        aimStartTime = Timer.getFPGATimestamp();
+        // replanning restarts the follower's clock, so the timeout goes from here instead
+        aimDeadline = aimStartTime + aimFollower.getProfile().getTotalTime() + AIM_TIMEOUT;
+        this.autoAim = true;
+    }
+
+    /**
+     * Turns along the aim profile using the gyro; call every loop while aiming
+     */
+    public void aim() {
+        // new frames refine the heading, but a new profile starts from rest, so the turn is only replanned once the
+        // current profile is done; until then the difference is left to the correction at the end of the turn
+        boolean profileDone = aimFollower.getTime() >= aimFollower.getProfile().getTotalTime();
+        if (profileDone && targetTracker.isTracking()) {
+            aimTargetHeading = targetTracker.getTargetHeading();
+            aimFollower.setGoal(sensorGyroAngle, aimTargetHeading);
+        }
+        // degrees per second to each wheel's feet per second, clockwise is the left side forwards
+        double turnRate = aimFollower.calculate(sensorGyroAngle);
+        double wheelSpeed = Math.toRadians(turnRate) * TRACK_WIDTH / 2;
+        this.setLeftVelOrPercent(wheelSpeed / getCurrentMaxSpeed());
+        this.setRightVelOrPercent(-wheelSpeed / getCurrentMaxSpeed());
 
-    public void autoAim() {
-        /* 
-         * TODO: either use this code or discard it;
-         * this constantly updates the target and uses a watchdog for safety in the vision class
-         * I don't think we'll need this though + we'd have to change vision to work this way again
-         */
-        if(!Vision.isStale()) {
-            double calculatedSpeed = aimPosControl.getSpeed(Vision.getYawOffset());
-            this.setLeftVelOrPercent(-calculatedSpeed);
-            this.setRightVelOrPercent(calculatedSpeed);
+        double now = Timer.getFPGATimestamp();
+        double elapsed = now - aimStartTime;
+        boolean timedOut = now > aimDeadline;
+        if (aimFollower.isFinished() || timedOut) {
+            this.autoAim = false;
+            lastAimTime = elapsed;
+            lastAimError = getAimError();
+            aimCount++;
+            if (timedOut) {
+                aimTimeouts++;
+                setPercentOutput(0);
+            }
         }
     }
 
+    /**
+     * @return how many degrees the robot is from the last aim heading, clockwise positive
+     */
+    public double getAimError() {
+        return aimTargetHeading - sensorGyroAngle;
+    }
+
+    public boolean isAiming() {
+        return autoAim;
+    }
+
     @Override
     public Map<String, Consumer<Object>> NTGets() {
-        return Map.ofEntries(Util.<Double>setter("/vision/data/OffsetX", 
-            a -> this.angleX = a
-        ));
+        return Map.ofEntries(
+            Util.<Double>setter("gyroDrift/loggedOffset", d -> loggedDriftOffset = d),
+            Util.<Double>setter("gyroDrift/loggedSlope", d -> loggedDriftSlope = d),
+            Util.<Boolean>setter("gyroDrift/applyLogged", b -> applyLoggedDrift = b)
+        );
     }
     
     @Override
     public Map<String, Supplier<Object>> NTSets() {
         Map<String, Supplier<Object>> sets = new HashMap<>();
         sets.putAll(super.NTSets());
-        sets.putAll(Map.of(
-            "pixyReading", pixy::read,
-            "gyroAngle", this::getGyroAngle,
-            "gyroAngleX", this::getGyroAngleX,
-            "gyroAngleY", this::getGyroAngleY,
-            "gyroAngleZ", this::getGyroAngleZ,
-            "gyroTemp", this::getGyroTemp,
-            "acquireCalled", this::getAcquireCalled
+        sets.putAll(Map.ofEntries(
+            Map.entry("pixyReading", pixy::read),
+            Map.entry("gyroAngle", this::getGyroAngle),
+            Map.entry("gyroAngleRaw", this::getGyroAngleRaw),
+            Map.entry("gyroAngleX", this::getGyroAngleX),
+            Map.entry("gyroAngleY", this::getGyroAngleY),
+            Map.entry("gyroAngleZ", this::getGyroAngleZ),
+            Map.entry("gyroTemp", this::getGyroTemp),
+            Map.entry("acquireCalled", this::getAcquireCalled),
+            Map.entry("shiftLatencyMs", this::getShiftLatencyMs),
+
+            Map.entry("aim/active", this::isAiming),
+            Map.entry("aim/targetHeading", () -> aimTargetHeading),
+            Map.entry("aim/errorDeg", this::getAimError),
+            Map.entry("aim/lastTimeMs", () -> lastAimTime * 1000),
+            Map.entry("aim/lastErrorDeg", () -> lastAimError),
+            Map.entry("aim/count", () -> aimCount),
+            Map.entry("aim/timeouts", () -> aimTimeouts),
+
+            Map.entry("tracker/tracking", targetTracker::isTracking),
+            Map.entry("tracker/bearing", targetTracker::getBearing),
+            Map.entry("tracker/targetHeading", targetTracker::getTargetHeading),
+            Map.entry("tracker/accepted", targetTracker::getAccepted),
+            Map.entry("tracker/rejected", targetTracker::getRejected),
+            Map.entry("tracker/lastInnovation", targetTracker::getLastInnovation),
+            Map.entry("tracker/innovationMean", targetTracker::getInnovationMean),
+            Map.entry("tracker/innovationRms", targetTracker::getInnovationRms),
+
+            Map.entry("gyroDrift/offset", gyroDrift::getOffset),
+            Map.entry("gyroDrift/slope", gyroDrift::getSlope),
+            Map.entry("gyroDrift/samples", gyroDrift::getSampleCount),
+            Map.entry("gyroDrift/correction", gyroDrift::getCorrection),
+            Map.entry("gyroDrift/rawDegPerMin", gyroDrift::getRawDriftPerMin),
+            Map.entry("gyroDrift/compensatedDegPerMin", gyroDrift::getCompensatedDriftPerMin),
+
+            Map.entry("pose/x", poseEstimator::getX),
+            Map.entry("pose/y", poseEstimator::getY),
+            Map.entry("pose/heading", poseEstimator::getHeadingDegrees),
+            Map.entry("pose/headingStdDev", poseEstimator::getHeadingStdDev),
+            Map.entry("pose/positionStdDev", poseEstimator::getPositionStdDev),
+            Map.entry("pose/slipping", poseEstimator::isSlipping),
+            Map.entry("pose/slipCount", poseEstimator::getSlipCount),
+            Map.entry("pose/gyroRejects", poseEstimator::getGyroRejectCount)
         ));
         return sets;
     }
@@ -8,6 +8,7 @@ import frc.robot.hailfire.Controls;
 import frc.robot.hailfire.IDs;
 import frc.robot.base.subsystem.Subsystem;
 import frc.robot.base.device.motor.PhoenixMotor;
+import frc.robot.base.device.motor.StatusFrameProfile;
 import frc.robot.base.device.DoubleSolenoid4150;
 import frc.robot.base.device.motor.Motor;
 
@@ -17,7 +18,8 @@ import java.util.function.Supplier;
 public class Intake extends Subsystem {
 
     private DoubleSolenoid4150 solenoid = new DoubleSolenoid4150(IDs.Intake.ARM_FORWARD, IDs.Intake.ARM_REVERSE);
-    private Motor spinner = new PhoenixMotor(new VictorSPX(IDs.Intake.MOTOR));
+    private Motor spinner = new PhoenixMotor(new VictorSPX(IDs.Intake.MOTOR))
+            .setStatusFrameProfile(StatusFrameProfile.OPEN_LOOP);
     
     private DigitalInput sensor = new DigitalInput(IDs.Intake.SENSOR);
 
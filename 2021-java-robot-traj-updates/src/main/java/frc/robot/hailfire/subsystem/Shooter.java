@@ -5,15 +5,24 @@ import com.ctre.phoenix.motorcontrol.can.TalonSRX;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.Encoder;
 import edu.wpi.first.wpilibj.Relay;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 import frc.robot.base.subsystem.Subsystem;
-import frc.robot.base.util.PosControl;
+import frc.robot.base.util.ProfileFollower;
+import frc.robot.base.util.ShotDetector;
 import frc.robot.base.util.Util;
+import frc.robot.base.util.VelocityReadyDetector;
 import frc.robot.hailfire.Controls;
 import frc.robot.hailfire.IDs;
 import frc.robot.base.device.motor.PhoenixMotor;
 import frc.robot.base.device.motor.EncoderMotor;
+import frc.robot.base.device.motor.GainProfileStore;
 import frc.robot.base.device.motor.Motor;
+import frc.robot.base.device.motor.SimEncoderMotor;
+import frc.robot.base.device.motor.StatusFrameProfile;
 import frc.robot.hailfire.MotorConfig;
+import frc.robot.hailfire.ShotMap;
+import frc.robot.hailfire.Vision;
 
 import java.util.Map;
 import java.util.function.Consumer;
@@ -21,12 +30,14 @@ import java.util.function.Supplier;
 
 public class Shooter extends Subsystem {
 
-    private EncoderMotor leftMotor = new PhoenixMotor(new TalonSRX(IDs.Shooter.LEFT_MOTOR), MotorConfig.Shooter.CONFIG);
-    private EncoderMotor rightMotor = new PhoenixMotor(new TalonSRX(IDs.Shooter.RIGHT_MOTOR), MotorConfig.Shooter.CONFIG).invert();
+    private EncoderMotor leftMotor = createWheel(IDs.Shooter.LEFT_MOTOR);
+    private EncoderMotor rightMotor = createWheel(IDs.Shooter.RIGHT_MOTOR).invert();
 
-    private Motor pitchMotor = new PhoenixMotor(new TalonSRX(IDs.Shooter.PITCH_MOTOR));
+    private Motor pitchMotor = new PhoenixMotor(new TalonSRX(IDs.Shooter.PITCH_MOTOR))
+            .setStatusFrameProfile(StatusFrameProfile.OPEN_LOOP);
     private Encoder pitchEncoder = new Encoder(3, 4);
-    private Motor carousel = new PhoenixMotor(new TalonSRX(IDs.Shooter.CAROUSEL_MOTOR)).invert();
+    private Motor carousel = new PhoenixMotor(new TalonSRX(IDs.Shooter.CAROUSEL_MOTOR))
+            .setStatusFrameProfile(StatusFrameProfile.OPEN_LOOP).invert();
     private DigitalInput carouselSwitch = new DigitalInput(1);
     private boolean carouselHit = false;
 
@@ -52,40 +63,201 @@ public class Shooter extends Subsystem {
     
     private boolean oldUpdateFPID = false;
     private boolean updateFPID = false;
+    private boolean oldRollbackFPID = false;
+    private boolean rollbackFPID = false;
+
+    private final GainProfileStore leftGains =
+            new GainProfileStore("shooter left", leftMotor, MotorConfig.Shooter.CONFIG,
+                    MotorConfig.Shooter.TUNING_SLOT, MotorConfig.Shooter.MAX_GAIN);
+    private final GainProfileStore rightGains =
+            new GainProfileStore("shooter right", rightMotor, MotorConfig.Shooter.CONFIG,
+                    MotorConfig.Shooter.TUNING_SLOT, MotorConfig.Shooter.MAX_GAIN);
+
+    // feeding waits for both wheels to be at speed instead of a fixed delay
+    private static final double READY_TOLERANCE = 0.03;
+    private static final double READY_MIN_TOLERANCE = 50;
+    private static final double READY_SETTLE_SECONDS = 0.1;
+    /**
+     * feed anyway after this long so a wheel that can't reach its demand doesn't stop shooting altogether
+     */
+    private static final long MAX_SPIN_UP_MS = 3000;
+    private final VelocityReadyDetector leftReady =
+            new VelocityReadyDetector(READY_TOLERANCE, READY_MIN_TOLERANCE, READY_SETTLE_SECONDS);
+    private final VelocityReadyDetector rightReady =
+            new VelocityReadyDetector(READY_TOLERANCE, READY_MIN_TOLERANCE, READY_SETTLE_SECONDS);
+    private double activeLeftDemand = 0;
+    private double activeRightDemand = 0;
+    private int readyTimeouts = 0;
+    private boolean timedOut = false;
+
+    // each ball is fed as soon as the wheels are back at speed from the last one
+    private static final double SHOT_DIP = 0.05;
+    private static final double SHOT_RECOVERED = 0.02;
+    private static final double MIN_FEED_OUTPUT = 0.4;
+    private static final double MAX_FEED_OUTPUT = 1;
+    private static final double FEED_OUTPUT_STEP = 0.05;
+    /**
+     * if the wheels sit at speed longer than this before the next ball gets there, the carousel can go faster
+     */
+    private static final double TARGET_IDLE_SECONDS = 0.15;
+    private final ShotDetector shotDetector = new ShotDetector(SHOT_DIP, SHOT_RECOVERED);
+    private double feedOutput = .7;
+    private boolean feeding = false;
+
+    // speeds and pitch come from the shot map when there's a target, otherwise from the dashboard
+    private final ShotMap shotMap = new ShotMap();
+    private boolean useShotMap = true;
+    private boolean usingShotMap = false;
+    private double shotMapKey = 0;
+    private double shotMapLeftRpm = 0;
+    private double shotMapRightRpm = 0;
+    private double shotMapPitch = 0;
+    private boolean oldShotMapPut = false;
+    private boolean shotMapPut = false;
+    private boolean oldShotMapRemove = false;
+    private boolean shotMapRemove = false;
+    private boolean oldShotMapReload = false;
+    private boolean shotMapReload = false;
+    private boolean oldShotMapSave = false;
+    private boolean shotMapSave = false;
+
+    private double sensorLeftVelocity = 0;
+    private double sensorRightVelocity = 0;
 
     public Shooter() {
         super("shooter");
     }
+
+    // simulated wheel: one 775pro geared 4:1 spinning a small flywheel
+    private static final double SIM_WHEEL_GEARING = 4;
+    private static final double SIM_WHEEL_INERTIA = 0.003;
+
+    /**
+     * Creates a shooter wheel motor, or a simulated one when not running on the robot
+     */
+    private static EncoderMotor createWheel(int id) {
+        if (RobotBase.isSimulation()) {
+            return new SimEncoderMotor(
+                MotorConfig.Shooter.CONFIG, MotorConfig.Shooter.COUNTS_PER_REV,
+                SimEncoderMotor.MotorType.PRO_775, 1, SIM_WHEEL_GEARING, SIM_WHEEL_INERTIA
+            );
+        }
+        return new PhoenixMotor(new TalonSRX(id), MotorConfig.Shooter.CONFIG)
+            .setStatusFrameProfile(StatusFrameProfile.FAST_FEEDBACK);
+    }
     
+    @Override
+    public void acquire() {
+        sensorLeftVelocity = leftMotor.getVelocity();
+        sensorRightVelocity = rightMotor.getVelocity();
+        usingShotMap = useShotMap && !Vision.isStale() && shotMap.update(Vision.getPitchOffset());
+
+        double now = Timer.getFPGATimestamp();
+        leftReady.update(activeLeftDemand, sensorLeftVelocity, now);
+        rightReady.update(activeRightDemand, sensorRightVelocity, now);
+
+        if (activeLeftDemand != 0 && activeRightDemand != 0) {
+            // a ball slows both wheels, so go by whichever one is further from its demand
+            double ratio = Math.min(sensorLeftVelocity / activeLeftDemand, sensorRightVelocity / activeRightDemand);
+            if (shotDetector.update(ratio, now)) {
+                adaptFeedOutput();
+            }
+        } else {
+            shotDetector.reset();
+        }
+    }
+
+    /**
+     * Slows the carousel down when a ball gets to the wheels before they recovered, and speeds it up when the
+     * wheels wait around for the next ball
+     */
+    private void adaptFeedOutput() {
+        if (shotDetector.wasLastShotEarly()) {
+            feedOutput -= FEED_OUTPUT_STEP;
+        } else if (shotDetector.getBurstShots() > 1 && shotDetector.getLastIdleTime() > TARGET_IDLE_SECONDS) {
+            // the first ball of a burst waited for the spin up, so it doesn't say anything about the carousel
+            feedOutput += FEED_OUTPUT_STEP;
+        }
+        feedOutput = Math.max(MIN_FEED_OUTPUT, Math.min(MAX_FEED_OUTPUT, feedOutput));
+    }
+
+    /**
+     * @return whether both wheels have settled at their demands
+     */
+    public boolean isReady() {
+        return leftReady.isReady() && rightReady.isReady();
+    }
+
     @Override
     public void periodic() {
         super.periodic();
-        // update the config if the boolean updateFPID changed
+        // send new gains if the boolean updateFPID changed; each motor keeps its own
         if (oldUpdateFPID != updateFPID) {
             oldUpdateFPID = updateFPID;
-            
-            var lc = MotorConfig.Shooter.CONFIG;
-            lc.F = leftF;
-            lc.P = leftP;
-            lc.I = leftI;
-            lc.D = leftD;
-            leftMotor.setConfig(lc);
-            
-            var rc = MotorConfig.Shooter.CONFIG;
-            rc.F = rightF;
-            rc.P = rightP;
-            rc.I = rightI;
-            rc.D = rightD;
-            rightMotor.setConfig(rc);
+            leftGains.update(leftF, leftP, leftI, leftD);
+            rightGains.update(rightF, rightP, rightI, rightD);
+        }
+        updateShotMap();
+        // go back to the gains before the last update if the boolean rollbackFPID changed
+        if (oldRollbackFPID != rollbackFPID) {
+            oldRollbackFPID = rollbackFPID;
+            leftGains.rollback();
+            rightGains.rollback();
+        }
+        leftGains.periodic();
+        rightGains.periodic();
+    }
+
+    /**
+     * Applies edits to the shot map from the dashboard, each one happens when its boolean changes
+     */
+    private void updateShotMap() {
+        if (oldShotMapPut != shotMapPut) {
+            oldShotMapPut = shotMapPut;
+            shotMap.put(shotMapKey, shotMapLeftRpm, shotMapRightRpm, shotMapPitch);
+        }
+        if (oldShotMapRemove != shotMapRemove) {
+            oldShotMapRemove = shotMapRemove;
+            shotMap.remove(shotMapKey);
+        }
+        if (oldShotMapReload != shotMapReload) {
+            oldShotMapReload = shotMapReload;
+            shotMap.load();
+        }
+        if (oldShotMapSave != shotMapSave) {
+            oldShotMapSave = shotMapSave;
+            shotMap.save();
         }
     }
 
+    /**
+     * @return the left wheel speed for the current target
+     */
+    public double getLeftSpeedDemand() {
+        return usingShotMap ? shotMap.getLeftRpm() : leftSpeedDemand;
+    }
+
+    public double getRightSpeedDemand() {
+        return usingShotMap ? shotMap.getRightRpm() : rightSpeedDemand;
+    }
+
+    /**
+     * @return the pitch encoder target for the current target
+     */
+    public double getPitchTarget() {
+        return usingShotMap ? shotMap.getPitch() : pitchTarget;
+    }
+
     @Override
     public void stop() {
         leftMotor.setPercentOutput(0);
         rightMotor.setPercentOutput(0);
         carousel.setPercentOutput(0);
         shooterStartTime = System.currentTimeMillis();
+        activeLeftDemand = 0;
+        activeRightDemand = 0;
+        timedOut = false;
+        feeding = false;
         carouselOutput = 0;
         autoCarousel = false;
     }
@@ -99,6 +271,10 @@ public class Shooter extends Subsystem {
             spinForShooter = false;
 
             shooterStartTime = System.currentTimeMillis();
+            activeLeftDemand = 0;
+            activeRightDemand = 0;
+            timedOut = false;
+            feeding = false;
 
             leftMotor.setPercentOutput(0);
             rightMotor.setPercentOutput(0);
@@ -151,8 +327,7 @@ public class Shooter extends Subsystem {
         } else {
             if (Controls.Shooter.TEST_PITCH()) {
                 autoPitch = true;
-                pitchPosControl.target = pitchTarget / 600;
-                pitchPosControl.reset();
+                pitchFollower.start(pitchEncoder.getDistance() / 600, getPitchTarget() / 600);
             }
             if (autoPitch) {
                 pitchAim();
@@ -172,8 +347,15 @@ public class Shooter extends Subsystem {
 
     public void shoot(boolean controlled) {
         // spin up motors and then carousel to shoot
-        double carouselSpeed = .7;
-        if (System.currentTimeMillis() - shooterStartTime > 2000 && !autoCarousel) {
+        boolean ready = isReady();
+        if (!ready && !timedOut && System.currentTimeMillis() - shooterStartTime > MAX_SPIN_UP_MS) {
+            timedOut = true;
+            readyTimeouts++;
+        }
+        feeding = feeding || ready || timedOut;
+        if (feeding && !autoCarousel) {
+            // hold the next ball back while the wheels recover, unless they never got to speed in the first place
+            double carouselSpeed = shotDetector.isRecovering() && !timedOut ? 0 : feedOutput;
             if (controlled) {
                 carouselOutput = carouselSpeed;
                 spinForShooter = true;
@@ -184,22 +366,32 @@ public class Shooter extends Subsystem {
             carousel.setPercentOutput(0);
         }
 
-        leftMotor.setVelocity(leftSpeedDemand); // 2600
-        rightMotor.setVelocity(rightSpeedDemand); // 3000button
+        activeLeftDemand = getLeftSpeedDemand();
+        activeRightDemand = getRightSpeedDemand();
+        leftMotor.setVelocity(activeLeftDemand); // 2600
+        rightMotor.setVelocity(activeRightDemand); // 3000button
     }
     
     boolean autoPitch = false;
-    PosControl pitchPosControl = new PosControl(0, 0.2, 0.01, 0.1, 1);
+    // in encoder counts / 600, full output at 2 per second
+    ProfileFollower pitchFollower = new ProfileFollower(2, 4, 20, 0.5, 0.2, 0.01, 1);
+    /**
+     * extra output while the profile is moving the shooter up
+     */
+    private static final double PITCH_UP_BIAS = 0.2;
     double pitchTarget = 0;
 
     public void pitchAim() {
-        if(pitchPosControl.isFinished()) {
+        var output = pitchFollower.calculate(pitchEncoder.getDistance()/600);
+        if(pitchFollower.isFinished()) {
             autoPitch = false;
+            pitchMotor.setPercentOutput(0);
             return;
         }
-        var output = pitchPosControl.getSpeed(pitchEncoder.getDistance()/600);
-        if(output > 0) {
-            output = Math.min(1, output * 5);
+        // raising it works against gravity, so moving up gets a constant bias on top of the profile instead of
+        // scaling the profile's output, which would push it past the profile's limits
+        if(pitchFollower.getProfile() != null && pitchFollower.getProfile().getVelocity() > 0) {
+            output = Math.min(1, output + PITCH_UP_BIAS);
         }
         pitchMotor.setPercentOutput(-output);
     }
@@ -208,9 +400,49 @@ public class Shooter extends Subsystem {
     public Map<String, Supplier<Object>> NTSets() {
         return Map.ofEntries(
                 Map.entry("leftPercent", leftMotor::getOutputPercent),
-                Map.entry("leftVelocity", leftMotor::getVelocity),
+                Map.entry("leftVelocity", () -> sensorLeftVelocity),
                 Map.entry("rightPercent", rightMotor::getOutputPercent),
-                Map.entry("rightVelocity", rightMotor::getVelocity),
+                Map.entry("rightVelocity", () -> sensorRightVelocity),
+
+                Map.entry("ready/left", leftReady::isReady),
+                Map.entry("ready/right", rightReady::isReady),
+                Map.entry("ready/both", this::isReady),
+                Map.entry("ready/lastTimeToReadyMs", () -> Math.max(
+                        leftReady.getLastTimeToReady(), rightReady.getLastTimeToReady()) * 1000),
+                Map.entry("ready/leftAverageTimeToReadyMs", () -> leftReady.getAverageTimeToReady() * 1000),
+                Map.entry("ready/rightAverageTimeToReadyMs", () -> rightReady.getAverageTimeToReady() * 1000),
+                Map.entry("ready/timeouts", () -> readyTimeouts),
+
+                Map.entry("gains/leftVersion", leftGains::getVersion),
+                Map.entry("gains/rightVersion", rightGains::getVersion),
+                Map.entry("gains/leftApplying", leftGains::isApplying),
+                Map.entry("gains/rightApplying", rightGains::isApplying),
+                Map.entry("gains/rejected", () -> leftGains.getRejected() + rightGains.getRejected()),
+                Map.entry("gains/failed", () -> leftGains.getFailed() + rightGains.getFailed()),
+                Map.entry("gains/leftF", () -> leftGains.getCurrent().F),
+                Map.entry("gains/leftP", () -> leftGains.getCurrent().P),
+                Map.entry("gains/rightF", () -> rightGains.getCurrent().F),
+                Map.entry("gains/rightP", () -> rightGains.getCurrent().P),
+                Map.entry("pitch/profileError", pitchFollower::getError),
+                Map.entry("pitch/profileRunning", pitchFollower::isRunning),
+                Map.entry("pitch/profileSeconds", () -> pitchFollower.getProfile() == null
+                        ? 0 : pitchFollower.getProfile().getTotalTime()),
+                Map.entry("pitch/profileGenerationUs", () -> pitchFollower.getProfile() == null
+                        ? 0 : pitchFollower.getProfile().getGenerationNanos() / 1000d),
+
+                Map.entry("shotMap/using", () -> usingShotMap),
+                Map.entry("shotMap/rows", shotMap::size),
+                Map.entry("shotMap/fileBusy", shotMap::isFileBusy),
+                Map.entry("shotMap/leftRpm", shotMap::getLeftRpm),
+                Map.entry("shotMap/rightRpm", shotMap::getRightRpm),
+                Map.entry("shotMap/pitch", shotMap::getPitch),
+
+                Map.entry("shots/count", shotDetector::getShotCount),
+                Map.entry("shots/early", shotDetector::getEarlyShots),
+                Map.entry("shots/perSecond", shotDetector::getShotsPerSecond),
+                Map.entry("shots/lastRecoveryMs", () -> shotDetector.getLastRecoveryTime() * 1000),
+                Map.entry("shots/averageRecoveryMs", () -> shotDetector.getAverageRecoveryTime() * 1000),
+                Map.entry("shots/feedOutput", () -> feedOutput),
 
                 Map.entry("pitchOutput", pitchMotor::getOutputPercent),
                 Map.entry("carouselOutput", carousel::getOutputPercent),
@@ -240,7 +472,18 @@ public class Shooter extends Subsystem {
                 Util.<Double>setter("leftSpeedDemand", d -> leftSpeedDemand = d),
                 Util.<Double>setter("rightSpeedDemand", d -> rightSpeedDemand = d),
                 Util.<Boolean>setter("updateFPID", b -> updateFPID = b),
-                Util.<Double>setter("pitchTarget", p -> pitchTarget = p)
+                Util.<Boolean>setter("rollbackFPID", b -> rollbackFPID = b),
+                Util.<Double>setter("pitchTarget", p -> pitchTarget = p),
+
+                Util.<Boolean>setter("shotMap/use", b -> useShotMap = b),
+                Util.<Double>setter("shotMap/editKey", d -> shotMapKey = d),
+                Util.<Double>setter("shotMap/editLeftRpm", d -> shotMapLeftRpm = d),
+                Util.<Double>setter("shotMap/editRightRpm", d -> shotMapRightRpm = d),
+                Util.<Double>setter("shotMap/editPitch", d -> shotMapPitch = d),
+                Util.<Boolean>setter("shotMap/put", b -> shotMapPut = b),
+                Util.<Boolean>setter("shotMap/remove", b -> shotMapRemove = b),
+                Util.<Boolean>setter("shotMap/reload", b -> shotMapReload = b),
+                Util.<Boolean>setter("shotMap/save", b -> shotMapSave = b)
         );
     }
 }
\ No newline at end of file